@@ -30,6 +30,16 @@ public class LeagueProperties {
         private String password;
         private int consoleListenPort;
         private String steamApiKey;
+        private int statusConcurrency = 16;
+        private long statusServerTimeout = 20000;
+        private long statusSweepTimeout = 180000;
+        private long queryTimeout = 3000;
+        private long statusBusyInterval = 60000;
+        private long statusIdleInterval = 300000;
+        private long statusUnclaimedInterval = 1800000;
+        private long statusDeadMaxInterval = 1800000;
+        private long sweepWindow = 45000;
+        private int historyHours = 24;
     }
 
     @Data
@@ -43,6 +53,9 @@ public class LeagueProperties {
         private int corePoolSize = 2;
         private int maxPoolSize = 50;
         private int queueCapacity = 10000;
+        private int interactiveCommandThreads = 4;
+        private int longRunningCommandThreads = 8;
+        private int userCommandConcurrency = 2;
     }
 
     @Data
@@ -78,6 +91,9 @@ public class LeagueProperties {
         private String debugChannel = "";
         private Support support = new Support();
         private Map<String, String> channels = new LinkedHashMap<>();
+        private long permissionCacheSize = 10000;
+        private long permissionCacheTtl = 3600000;
+        private Requests requests = new Requests();
 
         @Data
         public static class Support {
@@ -86,6 +102,18 @@ public class LeagueProperties {
             private List<String> roles = new ArrayList<>();
             private List<String> excludedRoles = new ArrayList<>();
         }
+
+        @Data
+        public static class Requests {
+            private double globalRate = 5;
+            private double channelRate = 1;
+            private double guildRate = 1;
+            private double privateRate = 1;
+            private double privateBudget = 5;
+            private double deleteRate = 1;
+            private double accountRate = 1;
+            private long coalescingWindow = 1000;
+        }
     }
 
     @Data
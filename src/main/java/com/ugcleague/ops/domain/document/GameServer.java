@@ -1,11 +1,16 @@
 package com.ugcleague.ops.domain.document;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.Set;
 
 @Document(collection = "game_server")
 public class GameServer extends AbstractAuditingEntity {
@@ -41,12 +46,21 @@ public class GameServer extends AbstractAuditingEntity {
     @Field("tv_port")
     private Integer tvPort;
 
+    /**
+     * Last time a status check found a change in this server, or the first check ever. Checks without changes don't
+     * advance it, so unchanged servers are not written at all. Ping changes alone don't count either, unless the
+     * server went up or down. The time of the last check is only kept in memory by the poll schedule.
+     */
     @Field("status_check_date")
     private ZonedDateTime statusCheckDate;
 
     @Field("last_valid_ping")
     private ZonedDateTime lastValidPing;
 
+    /**
+     * Last time an expire date check found a change in this server, or the first check ever. Checks without changes
+     * don't advance it, so unchanged servers are not written at all.
+     */
     @Field("expire_check_date")
     private ZonedDateTime expireCheckDate;
 
@@ -60,6 +74,10 @@ public class GameServer extends AbstractAuditingEntity {
 
     private boolean secure = true;
 
+    @Transient
+    @JsonIgnore
+    private final Set<String> dirtyFields = new LinkedHashSet<>();
+
     public String getId() {
         return id;
     }
@@ -73,6 +91,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setAddress(String address) {
+        markDirty("address", this.address, address);
         this.address = address;
     }
 
@@ -81,6 +100,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setName(String name) {
+        markDirty("name", this.name, name);
         this.name = name;
     }
 
@@ -89,6 +109,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setPing(Integer ping) {
+        markDirty("ping", this.ping, ping);
         this.ping = ping;
     }
 
@@ -97,6 +118,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setPlayers(Integer players) {
+        markDirty("players", this.players, players);
         this.players = players;
     }
 
@@ -105,6 +127,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setMaxPlayers(Integer maxPlayers) {
+        markDirty("maxPlayers", this.maxPlayers, maxPlayers);
         this.maxPlayers = maxPlayers;
     }
 
@@ -113,6 +136,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setMapName(String mapName) {
+        markDirty("mapName", this.mapName, mapName);
         this.mapName = mapName;
     }
 
@@ -121,6 +145,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setExpireDate(ZonedDateTime expireDate) {
+        markDirty("expireDate", this.expireDate, expireDate);
         this.expireDate = expireDate;
     }
 
@@ -129,6 +154,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setVersion(Integer version) {
+        markDirty("version", this.version, version);
         this.version = version;
     }
 
@@ -137,6 +163,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setRconPassword(String rconPassword) {
+        markDirty("rconPassword", this.rconPassword, rconPassword);
         this.rconPassword = rconPassword;
     }
 
@@ -145,6 +172,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setSvPassword(String svPassword) {
+        markDirty("svPassword", this.svPassword, svPassword);
         this.svPassword = svPassword;
     }
 
@@ -153,6 +181,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setTvPort(Integer tvPort) {
+        markDirty("tvPort", this.tvPort, tvPort);
         this.tvPort = tvPort;
     }
 
@@ -161,6 +190,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setStatusCheckDate(ZonedDateTime statusCheckDate) {
+        markDirty("statusCheckDate", this.statusCheckDate, statusCheckDate);
         this.statusCheckDate = statusCheckDate;
     }
 
@@ -169,6 +199,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setLastValidPing(ZonedDateTime lastValidPing) {
+        markDirty("lastValidPing", this.lastValidPing, lastValidPing);
         this.lastValidPing = lastValidPing;
     }
 
@@ -177,6 +208,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setExpireCheckDate(ZonedDateTime expireCheckDate) {
+        markDirty("expireCheckDate", this.expireCheckDate, expireCheckDate);
         this.expireCheckDate = expireCheckDate;
     }
 
@@ -185,6 +217,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setLastRconDate(ZonedDateTime lastRconDate) {
+        markDirty("lastRconDate", this.lastRconDate, lastRconDate);
         this.lastRconDate = lastRconDate;
     }
 
@@ -193,6 +226,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setLastGameUpdate(ZonedDateTime lastGameUpdate) {
+        markDirty("lastGameUpdate", this.lastGameUpdate, lastGameUpdate);
         this.lastGameUpdate = lastGameUpdate;
     }
 
@@ -201,6 +235,7 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setClaimable(boolean claimable) {
+        markDirty("claimable", this.claimable, claimable);
         this.claimable = claimable;
     }
 
@@ -209,9 +244,35 @@ public class GameServer extends AbstractAuditingEntity {
     }
 
     public void setSecure(boolean secure) {
+        markDirty("secure", this.secure, secure);
         this.secure = secure;
     }
 
+    private void markDirty(String field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            dirtyFields.add(field);
+        }
+    }
+
+    /**
+     * Names of the fields that were modified through their setters since this server was loaded or last saved.
+     *
+     * @return an unmodifiable view of the modified field names
+     */
+    @JsonIgnore
+    public Set<String> getDirtyFields() {
+        return Collections.unmodifiableSet(dirtyFields);
+    }
+
+    @JsonIgnore
+    public boolean isDirty() {
+        return !dirtyFields.isEmpty();
+    }
+
+    public void clearDirtyFields() {
+        dirtyFields.clear();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
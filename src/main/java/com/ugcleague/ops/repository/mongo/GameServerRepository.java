@@ -9,7 +9,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
-public interface GameServerRepository extends MongoRepository<GameServer, String> {
+public interface GameServerRepository extends MongoRepository<GameServer, String>, GameServerRepositoryCustom {
 
     Optional<GameServer> findById(String id);
 
@@ -20,6 +20,13 @@ public interface GameServerRepository extends MongoRepository<GameServer, String
     @Query("{ $where : 'this.rcon_password == null || (this.last_rcon_date <= this.expire_date && this.expire_date <= new Date())' }")
     List<GameServer> findByRconRefreshNeeded();
 
+    /**
+     * Find the servers whose status didn't change since the given date. This is not the last time they were checked,
+     * see {@link GameServer#getStatusCheckDate()}.
+     *
+     * @param dateTime the date to compare to
+     * @return the servers without status changes since the given date
+     */
     Stream<GameServer> findByStatusCheckDateBefore(ZonedDateTime dateTime);
 
     List<GameServer> findByVersionLessThan(Integer version);
@@ -0,0 +1,17 @@
+package com.ugcleague.ops.repository.mongo;
+
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Map;
+
+public interface GameServerRepositoryCustom {
+
+    /**
+     * Apply partial updates to many game servers using a single unordered bulk write, instead of saving each full
+     * document separately.
+     *
+     * @param updatesById the update to apply, keyed by game server id
+     * @return the number of documents matched by the bulk write
+     */
+    int bulkUpdate(Map<String, Update> updatesById);
+}
@@ -0,0 +1,51 @@
+package com.ugcleague.ops.repository.mongo;
+
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.ugcleague.ops.domain.document.GameServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+public class GameServerRepositoryImpl implements GameServerRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public GameServerRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int bulkUpdate(Map<String, Update> updatesById) {
+        if (updatesById.isEmpty()) {
+            return 0;
+        }
+        MongoConverter converter = mongoTemplate.getConverter();
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(GameServer.class);
+        QueryMapper queryMapper = new QueryMapper(converter);
+        UpdateMapper updateMapper = new UpdateMapper(converter);
+        ZonedDateTime now = ZonedDateTime.now();
+        BulkWriteResult result = mongoTemplate.execute(GameServer.class, collection -> {
+            BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+            updatesById.forEach((id, update) -> {
+                // bulk writes bypass the auditing listener
+                update.set("lastModifiedDate", now);
+                Query query = Query.query(Criteria.where("id").is(id));
+                bulk.find(queryMapper.getMappedObject(query.getQueryObject(), entity))
+                    .updateOne(updateMapper.getMappedObject(update.getUpdateObject(), entity));
+            });
+            return bulk.execute();
+        });
+        return result.isAcknowledged() ? result.getMatchedCount() : updatesById.size();
+    }
+}
@@ -70,14 +70,14 @@ public class DiscordCacheService implements DiscordSubscriber, DisposableBean {
             guildRepository.count(), channelRepository.count(), userRepository.count(), messageRepository.count());
     }
 
-    @EventSubscriber
-    public void onMessageReceived(MessageReceivedEvent event) {
-        // for now we will only log command messages
-        IMessage message = event.getMessage();
-        String content = message.getContent();
-        if (content.startsWith(".")) {
-            saveAll(newMessage(message));
-        }
+    /**
+     * Store an incoming message that looks like a command invocation. For now we will only log command messages.
+     *
+     * @param message the incoming message
+     * @see com.ugcleague.ops.service.discord.MessageClassifier
+     */
+    public void onCommandMessage(IMessage message) {
+        saveAll(newMessage(message));
     }
 
     @EventSubscriber
@@ -271,6 +271,14 @@ public class DiscordCacheService implements DiscordSubscriber, DisposableBean {
         return userRepository.save(u);
     }
 
+    public Iterable<DiscordUser> findUsersById(Iterable<String> ids) {
+        return userRepository.findAll(ids);
+    }
+
+    public List<DiscordUser> saveUsers(Iterable<DiscordUser> users) {
+        return userRepository.save(users);
+    }
+
     public Optional<DiscordGuild> findGuildById(String id) {
         return guildRepository.findById(id);
     }
@@ -279,6 +287,14 @@ public class DiscordCacheService implements DiscordSubscriber, DisposableBean {
         return guildRepository.save(g);
     }
 
+    public Iterable<DiscordGuild> findGuildsById(Iterable<String> ids) {
+        return guildRepository.findAll(ids);
+    }
+
+    public List<DiscordGuild> saveGuilds(Iterable<DiscordGuild> guilds) {
+        return guildRepository.save(guilds);
+    }
+
     public Optional<DiscordChannel> findChannelById(String id) {
         return channelRepository.findById(id);
     }
@@ -286,4 +302,12 @@ public class DiscordCacheService implements DiscordSubscriber, DisposableBean {
     public DiscordChannel saveChannel(DiscordChannel ch) {
         return channelRepository.save(ch);
     }
+
+    public Iterable<DiscordChannel> findChannelsById(Iterable<String> ids) {
+        return channelRepository.findAll(ids);
+    }
+
+    public List<DiscordChannel> saveChannels(Iterable<DiscordChannel> channels) {
+        return channelRepository.save(channels);
+    }
 }
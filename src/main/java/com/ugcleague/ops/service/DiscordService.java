@@ -1,16 +1,20 @@
 package com.ugcleague.ops.service;
 
+import com.codahale.metrics.MetricRegistry;
 import com.ugcleague.ops.config.LeagueProperties;
 import com.ugcleague.ops.domain.document.Incident;
 import com.ugcleague.ops.event.IncidentCreatedEvent;
 import com.ugcleague.ops.service.discord.command.SplitMessage;
+import com.ugcleague.ops.service.discord.util.DeletionPlan;
 import com.ugcleague.ops.service.discord.util.DiscordSubscriber;
+import com.ugcleague.ops.service.discord.util.MessageCoalescer;
+import com.ugcleague.ops.service.discord.util.RequestScheduler;
+import com.ugcleague.ops.service.discord.util.TimerWheel;
 import org.codehaus.plexus.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import sx.blah.discord.api.ClientBuilder;
@@ -23,40 +27,60 @@ import sx.blah.discord.util.*;
 import sx.blah.discord.util.Image;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.ugcleague.ops.service.discord.util.DiscordLimiter.acquire;
-import static com.ugcleague.ops.service.discord.util.DiscordLimiter.acquireDelete;
 
 @Service
 @Transactional
 public class DiscordService implements DiscordSubscriber {
 
     private static final Logger log = LoggerFactory.getLogger(DiscordService.class);
-    private static final int LENGTH_LIMIT = 1990;
+    public static final int LENGTH_LIMIT = 1990;
+    private static final int BULK_DELETE_LIMIT = 100;
+    private static final String PRIVATE_GROUP = "private";
+    // discord rejects bulk deletes of messages older than 14 days, keep a margin for clock differences
+    private static final long BULK_DELETE_MAX_AGE_HOURS = 14 * 24 - 1;
 
     private final LeagueProperties properties;
     private final ApplicationEventPublisher publisher;
     private final Executor taskExecutor;
+    private final RequestScheduler requestScheduler;
+    private final MessageCoalescer messageCoalescer;
+    private final TimerWheel<IMessage> deleteWheel;
+    private final Map<String, IChannel> privateChannels = new ConcurrentHashMap<>();
     private final Queue<IListener<?>> queuedListeners = new ConcurrentLinkedQueue<>();
     private final Queue<DiscordSubscriber> queuedSubscribers = new ConcurrentLinkedQueue<>();
     private volatile IDiscordClient client;
 
     @Autowired
-    public DiscordService(LeagueProperties properties, ApplicationEventPublisher publisher, Executor taskExecutor) {
+    public DiscordService(LeagueProperties properties, ApplicationEventPublisher publisher, Executor taskExecutor,
+                          MetricRegistry metricRegistry) {
         this.properties = properties;
         this.publisher = publisher;
         this.taskExecutor = taskExecutor;
+        this.requestScheduler = new RequestScheduler(taskExecutor, metricRegistry,
+            properties.getDiscord().getRequests().getGlobalRate());
+        this.requestScheduler.limitGroup(PRIVATE_GROUP, properties.getDiscord().getRequests().getPrivateBudget());
+        this.messageCoalescer = new MessageCoalescer(properties.getDiscord().getRequests().getCoalescingWindow(),
+            LENGTH_LIMIT);
+        this.deleteWheel = new TimerWheel<>(250, TimeUnit.MILLISECONDS, 512, "discord-delete-wheel",
+            this::deleteExpired);
     }
 
     @PostConstruct
@@ -66,6 +90,13 @@ public class DiscordService implements DiscordSubscriber {
         }
     }
 
+    @PreDestroy
+    private void shutdown() {
+        deleteWheel.shutdown();
+        messageCoalescer.shutdown();
+        requestScheduler.shutdown();
+    }
+
     private ClientBuilder newClientBuilder() {
         LeagueProperties.Discord discord = properties.getDiscord();
         ClientBuilder builder = new ClientBuilder()
@@ -116,6 +147,7 @@ public class DiscordService implements DiscordSubscriber {
     @EventSubscriber
     public void onReady(ReadyEvent event) {
         log.info("*** Discord bot armed ***");
+        privateChannels.clear();
         List<IGuild> guildList = client.getGuilds();
         for (IGuild guild : guildList) {
             log.info("{}", guildString(guild, client.getOurUser()));
@@ -130,6 +162,8 @@ public class DiscordService implements DiscordSubscriber {
     @EventSubscriber
     public void onReconnectSuccess(ReconnectSuccessEvent event) {
         log.info("*** Discord bot reconnect succeeded ***");
+        // channel instances are replaced after reconnecting
+        privateChannels.clear();
         publisher.publishEvent(new IncidentCreatedEvent(newRestartIncident("Reconnected bot to Discord")));
     }
 
@@ -209,44 +243,75 @@ public class DiscordService implements DiscordSubscriber {
         queuedSubscribers.remove(subscriber);
     }
 
-    private void sleep(long millis, String bucket) throws InterruptedException {
-        log.info("Backing off for {} ms due to rate limits on {}", millis, bucket);
-        Thread.sleep(Math.max(1, millis));
+    // Outbound requests
+    ////////////////////////////////////////
+
+    private <T> CompletableFuture<T> request(IChannel channel, RequestScheduler.Request<T> request) {
+        LeagueProperties.Discord.Requests rates = properties.getDiscord().getRequests();
+        if (channel.isPrivate()) {
+            return requestPrivate(((IPrivateChannel) channel).getRecipient().getID(), request);
+        } else {
+            return requestScheduler.submit("channel." + channel.getID(), rates.getChannelRate(), request);
+        }
     }
 
-    @Async
-    public void leaveGuild(IGuild guild) throws DiscordException, InterruptedException {
-        while (true) {
-            try {
-                guild.leaveGuild();
-                return;
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
+    private <T> CompletableFuture<T> requestPrivate(String userId, RequestScheduler.Request<T> request) {
+        // each recipient has its own bucket, so private messages to different users are sent in parallel
+        return requestScheduler.submit(PRIVATE_GROUP, "private." + userId,
+            properties.getDiscord().getRequests().getPrivateRate(), request);
+    }
+
+    private void logFailure(CompletableFuture<?> future, String action) {
+        future.exceptionally(t -> {
+            log.warn("Could not {}: {}", action, t.toString());
+            return null;
+        });
+    }
+
+    private IChannel getOrCreatePMChannel(IUser user) throws Exception {
+        IChannel cached = privateChannels.get(user.getID());
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            IChannel channel = client.getOrCreatePMChannel(user);
+            privateChannels.put(user.getID(), channel);
+            return channel;
+        } catch (Exception e) {
+            if (e instanceof RateLimitException) {
+                throw e; // retried by the scheduler
             }
+            log.warn("Could not create PM channel", e);
+            throw new DiscordException("Could not create PM channel");
         }
     }
 
-    @Async
+    public void leaveGuild(IGuild guild) throws DiscordException, InterruptedException {
+        logFailure(requestScheduler.submit("guild." + guild.getID(), properties.getDiscord().getRequests().getGuildRate(),
+            () -> {
+                guild.leaveGuild();
+                return null;
+            }), "leave guild");
+    }
+
     public CompletableFuture<IMessage> sendMessage(String channelId, String content) throws DiscordException, MissingPermissionsException, InterruptedException {
-        IChannel channel = client.getChannelByID(channelId);
-        IMessage response = null;
-        while (response == null) {
-            response = blockingSendMessage(channel, content, false);
-        }
-        return CompletableFuture.completedFuture(response);
+        return sendMessage(client.getChannelByID(channelId), content, false);
     }
 
     public CompletableFuture<IMessage> sendMessage(IChannel channel, String content) throws DiscordException, MissingPermissionsException, InterruptedException {
         return sendMessage(channel, content, false);
     }
 
-    @Async
     public CompletableFuture<IMessage> sendMessage(IChannel channel, String content, boolean tts) throws DiscordException, MissingPermissionsException, InterruptedException {
-        IMessage response = null;
-        while (response == null) {
-            response = blockingSendMessage(channel, content, tts);
+        return send(channel, content, tts);
+    }
+
+    private CompletableFuture<IMessage> send(IChannel channel, String content, boolean tts) {
+        if (content.length() > LENGTH_LIMIT) {
+            return sendParts(content, split -> request(channel, () -> channel.sendMessage(split)));
+        } else {
+            return request(channel, () -> channel.sendMessage(content, tts));
         }
-        return CompletableFuture.completedFuture(response);
     }
 
     public CompletableFuture<IMessage> sendPrivateMessage(String userId, String content) throws DiscordException, MissingPermissionsException, InterruptedException {
@@ -258,136 +323,147 @@ public class DiscordService implements DiscordSubscriber {
         return sendPrivateMessage(user, content, false);
     }
 
-    @Async
     public CompletableFuture<IMessage> sendPrivateMessage(IUser user, String content, boolean tts) throws DiscordException, MissingPermissionsException, InterruptedException {
-        IMessage response = null;
-        while (response == null) {
-            try {
-                response = blockingSendMessage(client.getOrCreatePMChannel(user), content, tts);
-            } catch (Exception e) {
-                log.warn("Could not create PM channel", e);
-                throw new DiscordException("Could not create PM channel");
-            }
+        return sendPrivate(user, content, tts);
+    }
+
+    private CompletableFuture<IMessage> sendPrivate(IUser user, String content, boolean tts) {
+        if (content.length() > LENGTH_LIMIT) {
+            return sendParts(content, split -> requestPrivate(user.getID(), () -> getOrCreatePMChannel(user).sendMessage(split)));
+        } else {
+            return requestPrivate(user.getID(), () -> getOrCreatePMChannel(user).sendMessage(content, tts));
         }
-        return CompletableFuture.completedFuture(response);
     }
 
-    public IMessage blockingSendMessage(IChannel channel, String message, boolean tts) throws MissingPermissionsException, DiscordException, InterruptedException {
-        IMessage response = null;
-        try {
-            if (message.length() > LENGTH_LIMIT) {
-                SplitMessage splitMessage = new SplitMessage(message);
-                List<String> splits = splitMessage.split(LENGTH_LIMIT);
-                for (String split : splits) {
-                    acquire(channel);
-                    response = channel.sendMessage(split);
-                }
-            } else {
-                acquire(channel);
-                response = channel.sendMessage(message, tts);
-            }
-        } catch (RateLimitException e) {
-            sleep(e.getRetryDelay(), e.getBucket());
+    private CompletableFuture<IMessage> sendParts(String content, Function<String, CompletableFuture<IMessage>> sender) {
+        // each part is queued once the previous one was sent, so the first failure stops the rest
+        CompletableFuture<IMessage> response = CompletableFuture.completedFuture(null);
+        for (String split : new SplitMessage(content).split(LENGTH_LIMIT)) {
+            response = response.thenCompose(previous -> sender.apply(split));
         }
         return response;
     }
 
-    @Async
     public CompletableFuture<IMessage> sendFile(IChannel channel, File file) throws IOException, MissingPermissionsException, DiscordException, InterruptedException {
-        IMessage response = null;
-        while (response == null) {
-            try {
-                response = channel.sendFile(file);
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
-            }
-        }
-        return CompletableFuture.completedFuture(response);
+        return request(channel, () -> channel.sendFile(file));
     }
 
-    @Async
     public CompletableFuture<IMessage> sendFilePrivately(IUser user, File file) throws DiscordException, IOException, MissingPermissionsException, InterruptedException {
-        IMessage response = null;
-        while (response == null) {
-            try {
-                response = client.getOrCreatePMChannel(user).sendFile(file);
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
-            } catch (Exception e) {
-                log.warn("Could not create PM channel", e);
-                throw new DiscordException("Could not create PM channel");
-            }
-        }
-        return CompletableFuture.completedFuture(response);
+        return requestPrivate(user.getID(), () -> getOrCreatePMChannel(user).sendFile(file));
     }
 
-    @Async
     public CompletableFuture<IMessage> editMessage(IMessage message, String content) throws DiscordException, MissingPermissionsException, InterruptedException {
-        IMessage response = null;
-        while (response == null) {
-            try {
-                response = message.edit(content);
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
-            }
-        }
-        return CompletableFuture.completedFuture(response);
+        // an immediate edit supersedes queued ones
+        messageCoalescer.discard("edit." + message.getID());
+        return request(message.getChannel(), () -> message.edit(content));
     }
 
-    @Async
     public void deleteMessage(IMessage message) throws DiscordException, MissingPermissionsException, InterruptedException {
-        while (true) {
-            try {
-                acquireDelete();
-                message.delete();
-                return;
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
-            }
-        }
+        messageCoalescer.discard("edit." + message.getID());
+        logFailure(requestDelete(() -> {
+            message.delete();
+            return null;
+        }), "delete message");
     }
 
+    /**
+     * Delete a message after a delay. Messages of the same channel that are due at the same time are deleted in bulk.
+     *
+     * @param message the message to delete
+     * @param timeout the time to wait before deleting it
+     * @param unit    the unit of the timeout
+     */
     public void deleteMessage(IMessage message, int timeout, TimeUnit unit) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                unit.sleep(timeout);
-            } catch (InterruptedException ex) {
-                log.warn("Could not perform cleanup: {}", ex.toString());
-            }
-        }).thenRun(() -> RequestBuffer.request(() -> {
-            try {
-                acquireDelete();
+        deleteWheel.schedule(message, timeout, unit);
+    }
+
+    private void deleteExpired(List<IMessage> messages) {
+        Map<IChannel, List<IMessage>> byChannel = messages.stream()
+            .collect(Collectors.groupingBy(IMessage::getChannel));
+        byChannel.forEach(this::deleteMessages);
+    }
+
+    /**
+     * Delete messages of a channel using as few requests as possible. Messages are deleted in bulk, up to 100 per
+     * request, except in private channels and for messages too old to be deleted in bulk, which are deleted one by
+     * one, stopping at the first failure.
+     *
+     * @param channel  the channel of the messages
+     * @param messages the messages to delete
+     * @return a future completed with the number of messages deleted
+     */
+    public CompletableFuture<Integer> deleteMessages(IChannel channel, List<IMessage> messages) {
+        messages.forEach(m -> messageCoalescer.discard("edit." + m.getID()));
+        LocalDateTime oldest = LocalDateTime.now().minusHours(BULK_DELETE_MAX_AGE_HOURS);
+        DeletionPlan<IMessage> plan = DeletionPlan.of(messages,
+            m -> !channel.isPrivate() && m.getTimestamp().isAfter(oldest), BULK_DELETE_LIMIT);
+        log.info("Deleting {} messages from {} in {} bulk and {} single requests", messages.size(),
+            channel.getName(), plan.getBatches().size(), plan.getSingles().size());
+        CompletableFuture<Integer> deleted = CompletableFuture.completedFuture(0);
+        for (List<IMessage> batch : plan.getBatches()) {
+            CompletableFuture<Integer> request = requestDelete(() -> {
+                channel.getMessages().bulkDelete(batch);
+                return batch.size();
+            });
+            deleted = deleted.thenCombine(request.exceptionally(t -> {
+                log.warn("Could not delete {} messages in bulk: {}", batch.size(), t.toString());
+                return 0;
+            }), Integer::sum);
+        }
+        // one at a time, so a failure (like missing permissions) stops the rest
+        AtomicInteger singleCount = new AtomicInteger();
+        CompletableFuture<Integer> singles = CompletableFuture.completedFuture(0);
+        for (IMessage message : plan.getSingles()) {
+            singles = singles.thenCompose(count -> requestDelete(() -> {
                 message.delete();
-            } catch (MissingPermissionsException | DiscordException e) {
-                log.warn("Failed to delete message", e);
-            }
-            return null;
-        }));
+                return singleCount.incrementAndGet();
+            }));
+        }
+        return deleted.thenCombine(singles.exceptionally(t -> {
+            log.warn("Could not delete message - aborting: {}", t.toString());
+            return singleCount.get();
+        }), Integer::sum);
+    }
+
+    private <T> CompletableFuture<T> requestDelete(RequestScheduler.Request<T> request) {
+        return requestScheduler.submit("delete", properties.getDiscord().getRequests().getDeleteRate(), request);
+    }
+
+    /**
+     * Edit a message after a short window, where later edits of the same message within the window replace this one.
+     *
+     * @param message the message to edit
+     * @param content the new content of the message
+     */
+    public void queueEdit(IMessage message, String content) {
+        messageCoalescer.replace("edit." + message.getID(), content,
+            latest -> logFailure(request(message.getChannel(), () -> message.edit(latest)), "edit message"));
     }
 
+    /**
+     * Send a message to a channel after a short window, merged with other queued messages to the same channel.
+     *
+     * @param channel the channel to send the message to
+     * @param content the content of the message
+     * @param tts     if the message should use text-to-speech, only merged with other messages with the same setting
+     */
+    public void queueMessage(IChannel channel, String content, boolean tts) {
+        messageCoalescer.append("channel." + channel.getID() + (tts ? ".tts" : ""), content,
+            merged -> logFailure(send(channel, merged, tts), "send message"));
+    }
 
-    @Async
     public void changeUsername(String name) throws DiscordException, InterruptedException {
-        while (true) {
-            try {
-                client.changeUsername(name);
-                return;
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
-            }
-        }
+        logFailure(requestScheduler.submit("account", properties.getDiscord().getRequests().getAccountRate(), () -> {
+            client.changeUsername(name);
+            return null;
+        }), "change username");
     }
 
-    @Async
     public void changeAvatar(Image avatar) throws DiscordException, InterruptedException {
-        while (true) {
-            try {
-                client.changeAvatar(avatar);
-                return;
-            } catch (RateLimitException e) {
-                sleep(e.getRetryDelay(), e.getBucket());
-            }
-        }
+        logFailure(requestScheduler.submit("account", properties.getDiscord().getRequests().getAccountRate(), () -> {
+            client.changeAvatar(avatar);
+            return null;
+        }), "change avatar");
     }
 
     public Long getUserCount() {
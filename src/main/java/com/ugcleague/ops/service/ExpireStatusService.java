@@ -14,15 +14,19 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class ExpireStatusService {
 
     private static final Logger log = LoggerFactory.getLogger(ExpireStatusService.class);
+    private static final long EXPIRE_DATE_TOLERANCE = 60;
     private static final String SERVICE_URL = "https://www.gameservers.com/ugcleague/free/index.php?action=get_status";
 
     private final RestTemplate restTemplate = new RestTemplate();
@@ -45,17 +49,23 @@ public class ExpireStatusService {
         log.debug("==== Refreshing expire dates of ALL servers ====");
         ZonedDateTime now = ZonedDateTime.now();
         Map<String, Integer> map = getExpireSeconds();
-        long count = gameServerService.findAll().stream().filter(s -> map.containsKey(s.getId()))
-            .map(s -> refreshExpireDate(s, now, (Integer) map.get(s.getId()))).map(gameServerService::save).count();
-        log.info("{} expire dates refreshed", count);
+        List<GameServer> servers = gameServerService.findAll().stream().filter(s -> map.containsKey(s.getId()))
+            .map(s -> refreshExpireDate(s, now, map.get(s.getId()))).collect(Collectors.toList());
+        int written = gameServerService.saveChanges(servers);
+        log.info("{} expire dates refreshed, {} changed", servers.size(), written);
         gameServerService.refreshRconPasswords();
     }
 
     private GameServer refreshExpireDate(GameServer server, ZonedDateTime now, Integer seconds) {
         if (seconds != 0) {
-            server.setExpireDate(now.plusSeconds(seconds));
+            ZonedDateTime expireDate = now.plusSeconds(seconds);
+            // ignore the drift caused by the request latency, so an unchanged claim is not written again
+            if (server.getExpireDate() == null
+                || Duration.between(server.getExpireDate(), expireDate).abs().getSeconds() > EXPIRE_DATE_TOLERANCE) {
+                server.setExpireDate(expireDate);
+            }
         }
-        server.setExpireCheckDate(now);
+        GameServerService.touchCheckDate(server.isDirty(), server.getExpireCheckDate(), server::setExpireCheckDate);
         return server;
     }
 
@@ -0,0 +1,115 @@
+package com.ugcleague.ops.service;
+
+import com.ugcleague.ops.config.LeagueProperties;
+import com.ugcleague.ops.domain.document.GameServer;
+import com.ugcleague.ops.service.util.RegionAggregator;
+import com.ugcleague.ops.service.util.SampleRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the recent ping and player count history of every game server in memory, so it can be queried without an
+ * external time-series database. Region-wide aggregates are also updated as each sample arrives.
+ * <p>
+ * Samples are only fed by the status polling, so reading from this store never causes network I/O, which makes it
+ * safe to back metric gauges.
+ */
+@Service
+public class GameServerHistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(GameServerHistoryService.class);
+
+    private final Map<String, SampleRing> history = new ConcurrentHashMap<>();
+    private final RegionAggregator regionAggregator = new RegionAggregator();
+    private final int capacity;
+
+    @Autowired
+    public GameServerHistoryService(LeagueProperties leagueProperties) {
+        LeagueProperties.GameServers config = leagueProperties.getGameServers();
+        // enough room to hold the configured period when polling at the fastest rate
+        this.capacity = (int) Math.max(1, Duration.ofHours(config.getHistoryHours()).toMillis()
+            / Math.max(1, config.getStatusBusyInterval()));
+        log.debug("Keeping up to {} status samples per server", capacity);
+    }
+
+    /**
+     * Store the current ping and player count of a server.
+     *
+     * @param server the server, with its status freshly refreshed
+     * @param time   epoch milliseconds of the sample
+     */
+    public void record(GameServer server, long time) {
+        int ping = server.getPing() == null ? -1 : server.getPing();
+        int players = ping < 0 || server.getPlayers() == null ? -1 : server.getPlayers();
+        history.computeIfAbsent(server.getId(), k -> new SampleRing(capacity)).record(time, ping, players);
+        regionAggregator.update(server.getId(), getRegion(server), ping, players);
+    }
+
+    /**
+     * Use the stored status of a server as its first sample, taken now. The status check date only tells when the
+     * status last changed, and the stored status is still the latest one known. Servers that were never checked only
+     * contribute to the aggregates.
+     *
+     * @param server the server, as last persisted
+     */
+    public void seed(GameServer server) {
+        ZonedDateTime checkDate = server.getStatusCheckDate();
+        if (checkDate != null && checkDate.toInstant().toEpochMilli() > 0) {
+            record(server, System.currentTimeMillis());
+        } else {
+            int ping = server.getPing() == null ? -1 : server.getPing();
+            int players = ping < 0 || server.getPlayers() == null ? -1 : server.getPlayers();
+            regionAggregator.update(server.getId(), getRegion(server), ping, players);
+        }
+    }
+
+    /**
+     * @param server the server to query
+     * @return the latest ping sample of the server, or -1 if it has no samples
+     */
+    public int getLatestPing(GameServer server) {
+        SampleRing ring = history.get(server.getId());
+        return ring == null ? -1 : ring.latestPing();
+    }
+
+    /**
+     * @param server the server to query
+     * @return the latest player count sample of the server, or -1 if it has no samples or did not respond
+     */
+    public int getLatestPlayers(GameServer server) {
+        SampleRing ring = history.get(server.getId());
+        return ring == null ? -1 : ring.latestPlayers();
+    }
+
+    public String getRegion(GameServer server) {
+        return server.getShortName().substring(0, 3);
+    }
+
+    public RegionAggregator getRegionAggregator() {
+        return regionAggregator;
+    }
+
+    /**
+     * Retrieve the samples of a server taken since the given time.
+     *
+     * @param server the server to query
+     * @param since  the oldest sample time to include
+     * @return the matching samples, oldest first, or empty if the server has no history yet
+     */
+    public Optional<SampleRing.Samples> getHistory(GameServer server, Instant since) {
+        return Optional.ofNullable(history.get(server.getId())).map(ring -> ring.since(since.toEpochMilli()));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
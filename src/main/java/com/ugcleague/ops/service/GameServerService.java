@@ -1,36 +1,53 @@
 package com.ugcleague.ops.service;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.ugcleague.ops.config.LeagueProperties;
 import com.ugcleague.ops.domain.document.GameServer;
 import com.ugcleague.ops.event.GameUpdateCompletedEvent;
 import com.ugcleague.ops.event.GameUpdateDelayedEvent;
 import com.ugcleague.ops.event.GameUpdateStartedEvent;
 import com.ugcleague.ops.repository.mongo.GameServerRepository;
+import com.ugcleague.ops.service.util.FanOutExecutor;
 import com.ugcleague.ops.service.util.MetricNames;
+import com.ugcleague.ops.service.util.PollSchedule;
 import com.ugcleague.ops.service.util.SourceServer;
+import com.ugcleague.ops.service.util.StatusProbe;
+import com.ugcleague.ops.service.util.SweepPlanner;
 import com.ugcleague.ops.service.util.UpdateResult;
 import com.ugcleague.ops.service.util.UpdateResultMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.remoting.RemoteAccessException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -38,26 +55,38 @@ import java.util.stream.Collectors;
 public class GameServerService {
 
     private static final Logger log = LoggerFactory.getLogger(GameServerService.class);
+    private static final ZonedDateTime EPOCH = ZonedDateTime.ofInstant(Instant.ofEpochMilli(0L), ZoneId.systemDefault());
 
     private final AdminPanelService adminPanelService;
     private final SteamCondenserService steamCondenserService;
     private final GameServerRepository gameServerRepository;
     private final ApplicationEventPublisher publisher;
     private final MetricRegistry metricRegistry;
+    private final LeagueProperties leagueProperties;
+    private final GameServerHistoryService historyService;
 
     private final UpdateResultMap updateResultMap = new UpdateResultMap();
     //private final DeadServerMap deadServerMap = new DeadServerMap();
     private final Map<String, String> availableMods = new LinkedHashMap<>();
 
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    private FanOutExecutor statusExecutor;
+    private PollSchedule pollSchedule;
+    private SweepPlanner sweepPlanner;
+
     @Autowired
     public GameServerService(GameServerRepository gameServerRepository, SteamCondenserService steamCondenserService,
                              AdminPanelService adminPanelService, ApplicationEventPublisher publisher,
-                             MetricRegistry metricRegistry) {
+                             MetricRegistry metricRegistry, LeagueProperties leagueProperties,
+                             GameServerHistoryService historyService) {
         this.gameServerRepository = gameServerRepository;
         this.steamCondenserService = steamCondenserService;
         this.adminPanelService = adminPanelService;
         this.publisher = publisher;
         this.metricRegistry = metricRegistry;
+        this.leagueProperties = leagueProperties;
+        this.historyService = historyService;
     }
 
     @PostConstruct
@@ -69,6 +98,18 @@ public class GameServerService {
         availableMods.put("metamod", "5171820e847b6");
         availableMods.put("sourcemod", "517176e485ca6");
         availableMods.put("sourcemod-update", "51796947838dd");
+
+        LeagueProperties.GameServers config = leagueProperties.getGameServers();
+        statusExecutor = new FanOutExecutor("status-refresh", config.getStatusConcurrency());
+        pollSchedule = new PollSchedule(config.getStatusBusyInterval(), config.getStatusIdleInterval(),
+            config.getStatusUnclaimedInterval(), config.getStatusDeadMaxInterval());
+        sweepPlanner = new SweepPlanner(config.getSweepWindow(),
+            metricRegistry.histogram(MetricNames.GAME_SERVER_OUTBOUND_RATE));
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        statusExecutor.shutdown();
     }
 
     public void refreshServerDetails() {
@@ -107,13 +148,17 @@ public class GameServerService {
     public void refreshRconPasswords() {
         log.debug("==== Refreshing RCON server passwords ====");
         // refreshing passwords of expired servers since they auto restart and change password
-        long count = gameServerRepository.findByRconRefreshNeeded().stream()
-            .map(this::refreshRconPassword).filter(u -> u != null).count();
-        log.info("{} servers updated their RCON passwords", count);
+        LeagueProperties.GameServers config = leagueProperties.getGameServers();
+        Collection<GameServer> refreshed = statusExecutor.invokeAll(gameServerRepository.findByRconRefreshNeeded(),
+            this::refreshRconPassword, this::sweepOffset, config.getStatusServerTimeout(),
+            config.getStatusSweepTimeout(), TimeUnit.MILLISECONDS).values();
+        saveChanges(refreshed);
+        log.info("{} servers updated their RCON passwords", refreshed.size());
     }
 
     /**
-     * Crawl through the remote server panel looking for the rcon_password of the given <code>server</code>.
+     * Crawl through the remote server panel looking for the rcon_password of the given <code>server</code>. The server
+     * is only modified, callers must save it.
      *
      * @param server a GameServer
      * @return the updated GameServer, or <code>null</code> if the updated rcon_password could not be retrieved
@@ -125,6 +170,7 @@ public class GameServerService {
         log.debug("Refreshing RCON data: {}", server.getShortNameAndAddress());
         try {
             // TODO: signal abnormal conditions through incidents instead of just logging
+            sweepPlanner.mark();
             Map<String, String> result = adminPanelService.getServerConfig(server.getId());
             if (!result.getOrDefault("result", "").equals("")) {
                 log.warn("RCON refresh failed for {}: {}", server.getShortNameAndAddress(), result.get("result"));
@@ -135,7 +181,7 @@ public class GameServerService {
                 log.warn("RCON refresh with invalid data for {}", server.getShortNameAndAddress());
             }
             server.setLastRconDate(ZonedDateTime.now());
-            return gameServerRepository.save(server);
+            return server;
         } catch (RemoteAccessException | IOException e) {
             log.warn("Could not refresh RCON data for {}: {}", server.getShortNameAndAddress(), e.toString());
         }
@@ -149,13 +195,13 @@ public class GameServerService {
 
     @Async
     public void updateGameServers() {
-        log.debug("==== Refreshing server status ====");
+        log.debug("==== Checking game server updates ====");
         int latestVersion = steamCondenserService.getLatestVersion();
-        // check for availability of game update from GS side
-        long refreshed = gameServerRepository.findAll().stream().map(this::refreshServerStatus)
-            .map(gameServerRepository::save).count();
-        long updating = findOutdatedServers().stream().map(this::performGameUpdate)
-            .map(gameServerRepository::save).count();
+        // server versions are kept up to date by the status polling, see refreshDueServerStatus
+        List<GameServer> outdated = findOutdatedServers().stream().map(this::performGameUpdate)
+            .collect(Collectors.toList());
+        saveChanges(outdated);
+        long updating = outdated.size();
         if (updating == 0) {
             log.debug("All servers up-to-date");
             if (!updateResultMap.isEmpty()) {
@@ -171,7 +217,6 @@ public class GameServerService {
                 publisher.publishEvent(new GameUpdateDelayedEvent(updateResultMap).causedBy(failed));
             }
         }
-        log.debug("{} servers had their status refreshed", refreshed);
 //        long failingCount = deadServerMap.values().stream()
 //            .map(info -> info.getAttempts().get()).filter(i -> i >= 5).count();
 //        int maxFailedAttempts = deadServerMap.values().stream()
@@ -182,76 +227,141 @@ public class GameServerService {
 //        }
     }
 
-    public GameServer refreshServerStatus(GameServer server) {
-        return refreshServerStatus(server, false);
-    }
-
-    public GameServer refreshServerStatus(GameServer server, boolean invalidateCachedValues) {
-        if (server == null) {
-            return null;
+    /**
+     * Refresh the status of the servers that are due according to their polling schedule, so busy servers are polled
+     * more often than idle, unclaimed or unresponsive ones. If another sweep is still running this one is skipped.
+     *
+     * @return the list of servers that were refreshed
+     * @see PollSchedule
+     */
+    public List<GameServer> refreshDueServerStatus() {
+        if (!sweepLock.tryLock()) {
+            log.debug("Skipping status sweep since another one is in progress");
+            return Collections.emptyList();
         }
-        SourceServer source = getSourceServer(server);
-        if (source != null) {
-            server.setStatusCheckDate(ZonedDateTime.now());
-            Integer ping = invalidateCachedValues ? pingAndLogIncident(server) : pingGaugeValue(server);
-            server.setPing(ping);
-            if (ping >= 0) {
-                server.setPlayers(invalidateCachedValues ? playerCountAndLogIncident(server) : playersGaugeValue(server));
-                Map<String, Object> info = steamCondenserService.info(source);
-                Optional.ofNullable(info.get("maxPlayers")).map(this::safeParse).ifPresent(server::setMaxPlayers);
-                Optional.ofNullable(info.get("gameVersion")).map(this::safeParse).ifPresent(server::setVersion);
-                Optional.ofNullable(info.get("mapName")).map(Object::toString).ifPresent(server::setMapName);
-                server.setTvPort(Optional.ofNullable(info.get("tvPort")).map(this::safeParse).orElse(0));
-                //deadServerMap.put(server, new DeadServerInfo(server));
-            }
-
-            /*else {
-                deadServerMap.computeIfAbsent(server, DeadServerInfo::new).getAttempts().incrementAndGet();
-            }*/
+        try {
+            List<GameServer> servers = gameServerRepository.findAll();
+            List<GameServer> due = pollSchedule.due(servers, Instant.now());
+            log.debug("{} of {} servers are due for a status refresh", due.size(), servers.size());
+            return refreshServerStatus(due);
+        } finally {
+            sweepLock.unlock();
         }
-        return server;
     }
 
-    private Integer pingGaugeValue(GameServer server) {
-        Object value = metricRegistry.getGauges().get(MetricNames.gameServerPing(server)).getValue();
-        return value == null ? -1 : (Integer) value;
+    private List<GameServer> refreshServerStatus(List<GameServer> servers) {
+        LeagueProperties.GameServers config = leagueProperties.getGameServers();
+        try (Timer.Context ignored = metricRegistry.timer(MetricNames.GAME_SERVER_STATUS_SWEEP).time()) {
+            Map<GameServer, GameServer> results = statusExecutor.invokeAll(servers, this::refreshServerStatus,
+                this::sweepOffset, config.getStatusServerTimeout(), config.getStatusSweepTimeout(), TimeUnit.MILLISECONDS);
+            List<GameServer> refreshed = new ArrayList<>(results.values());
+            saveChanges(refreshed);
+            return refreshed;
+        }
     }
 
-    private Integer playersGaugeValue(GameServer server) {
-        Object value = metricRegistry.getGauges().get(MetricNames.gameServerPlayers(server)).getValue();
-        return value == null ? -1 : (Integer) value;
+    private long sweepOffset(GameServer server) {
+        return sweepPlanner.offset(server.getId());
     }
 
-    public Integer getServerPing(GameServer server) {
-        // refresh ping and player count but don't save to DB
-        if (steamCondenserService.containsSourceServer(server.getAddress())) {
-            return pingAndLogIncident(server);
+    /**
+     * Write only the modified fields of the given servers, using a single bulk write. Servers without modifications
+     * are not written at all, and servers that were never persisted are saved in full.
+     *
+     * @param servers the servers to save
+     * @return the number of servers written
+     * @see GameServer#getDirtyFields()
+     */
+    public int saveChanges(Collection<GameServer> servers) {
+        Map<String, Update> updates = new LinkedHashMap<>();
+        Histogram fieldsPerWrite = metricRegistry.histogram(MetricNames.GAME_SERVER_WRITES_FIELDS);
+        int inserted = 0;
+        for (GameServer server : servers) {
+            if (server.getId() == null) {
+                gameServerRepository.save(server);
+                server.clearDirtyFields();
+                inserted++;
+            } else if (server.isDirty()) {
+                BeanWrapper wrapper = new BeanWrapperImpl(server);
+                Update update = new Update();
+                server.getDirtyFields().forEach(field -> update.set(field, wrapper.getPropertyValue(field)));
+                updates.put(server.getId(), update);
+                fieldsPerWrite.update(server.getDirtyFields().size());
+            }
         }
-        return null;
+        int written = gameServerRepository.bulkUpdate(updates) + inserted;
+        servers.forEach(GameServer::clearDirtyFields);
+        int skipped = servers.size() - updates.size() - inserted;
+        metricRegistry.counter(MetricNames.GAME_SERVER_WRITES).inc(written);
+        metricRegistry.counter(MetricNames.GAME_SERVER_WRITES_SKIPPED).inc(skipped);
+        log.debug("{} servers written, {} without changes", written, skipped);
+        return written;
     }
 
-    public Integer getServerPlayerCount(GameServer server) {
-        // refresh ping and player count but don't save to DB
-        if (steamCondenserService.containsSourceServer(server.getAddress())) {
-            return playerCountAndLogIncident(server);
+    /**
+     * Mark a check date only if the check found a change or the server was never checked before, so that unchanged
+     * servers can skip their write completely. Check dates therefore tell when a check last found a change, not when
+     * it last ran: the time of the last status probe is only kept in memory, see {@link PollSchedule#getLastPoll}.
+     *
+     * @param changed   if the check found a change worth recording
+     * @param checkDate the current check date of the server
+     * @param setter    how to update the check date
+     */
+    public static void touchCheckDate(boolean changed, ZonedDateTime checkDate, Consumer<ZonedDateTime> setter) {
+        if (changed || checkDate == null || checkDate.isEqual(EPOCH)) {
+            setter.accept(ZonedDateTime.now());
         }
-        return null;
     }
 
-    private Integer pingAndLogIncident(GameServer server) {
-        Integer ping = steamCondenserService.ping(getSourceServer(server));
-        if (ping < 0) {
-            log.warn("Last ping to {} failed", server.getShortNameAndAddress());
+    /**
+     * Tell if a status refresh changed anything besides the ping, which varies on almost every probe. A server going
+     * up or down is still a change.
+     *
+     * @param server       the refreshed server
+     * @param previousPing the ping of the server before the refresh
+     * @return <code>true</code> if the status check date should be advanced
+     */
+    static boolean isStatusChanged(GameServer server, Integer previousPing) {
+        return server.getDirtyFields().stream().anyMatch(field -> !field.equals("ping"))
+            || isReachable(previousPing) != isReachable(server.getPing());
+    }
+
+    private static boolean isReachable(Integer ping) {
+        return ping != null && ping >= 0;
+    }
+
+    public GameServer refreshServerStatus(GameServer server) {
+        if (server == null) {
+            return null;
         }
-        return ping;
+        StatusProbe status = probeAndLogIncident(server);
+        Integer previousPing = server.getPing();
+        server.setPing(status.getPing());
+        if (status.isReachable()) {
+            server.setPlayers(status.getPlayers());
+            Optional.ofNullable(status.getMaxPlayers()).ifPresent(server::setMaxPlayers);
+            Optional.ofNullable(status.getGameVersion()).map(this::safeParse).ifPresent(server::setVersion);
+            Optional.ofNullable(status.getMapName()).ifPresent(server::setMapName);
+            server.setTvPort(status.getTvPort());
+            //deadServerMap.put(server, new DeadServerInfo(server));
+        }
+        /*else {
+            deadServerMap.computeIfAbsent(server, DeadServerInfo::new).getAttempts().incrementAndGet();
+        }*/
+        touchCheckDate(isStatusChanged(server, previousPing), server.getStatusCheckDate(), server::setStatusCheckDate);
+        Instant now = Instant.now();
+        historyService.record(server, now.toEpochMilli());
+        pollSchedule.record(server, updateResultMap.containsKey(server), now);
+        return server;
     }
 
-    private Integer playerCountAndLogIncident(GameServer server) {
-        Integer count = steamCondenserService.players(getSourceServer(server));
-        if (count < 0) {
-            log.warn("Last player retrieval of {} failed", server.getShortNameAndAddress());
+    private StatusProbe probeAndLogIncident(GameServer server) {
+        sweepPlanner.mark();
+        StatusProbe status = steamCondenserService.probe(server.getAddress());
+        if (!status.isReachable()) {
+            log.warn("Last status probe to {} failed", server.getShortNameAndAddress());
         }
-        return count;
+        return status;
     }
 
 //    public DeadServerMap getDeadServerMap() {
@@ -260,12 +370,14 @@ public class GameServerService {
 
     public Map<String, Object> refreshSourceServerStatus(SourceServer source) {
         Map<String, Object> map = new LinkedHashMap<>();
-        int ping = steamCondenserService.ping(source);
-        map.put("ping", ping);
-        if (ping >= 0) {
-            map.put("players", steamCondenserService.players(source));
-            Map<String, Object> info = steamCondenserService.info(source);
-            map.putAll(info); // "maxPlayers", "gameVersion", "mapName", "tvPort"
+        StatusProbe status = steamCondenserService.probe(source.getConnectAddress());
+        map.put("ping", status.getPing());
+        if (status.isReachable()) {
+            map.put("players", status.getPlayers());
+            map.put("maxPlayers", status.getMaxPlayers());
+            map.put("gameVersion", status.getGameVersion());
+            map.put("mapName", status.getMapName());
+            map.put("tvPort", status.getTvPort());
         }
         return map;
     }
@@ -281,11 +393,9 @@ public class GameServerService {
 
     private GameServer performGameUpdate(GameServer server) {
         // check player count, never update if players > 0
-        SourceServer source = getSourceServer(server);
-        if (source != null) {
-            server.setPing(pingAndLogIncident(server));
-            server.setPlayers(playerCountAndLogIncident(server));
-        }
+        StatusProbe status = probeAndLogIncident(server);
+        server.setPing(status.getPing());
+        server.setPlayers(status.getPlayers());
         if (updateResultMap.isEmpty()) {
             publisher.publishEvent(new GameUpdateStartedEvent(updateResultMap));
         }
@@ -362,7 +472,9 @@ public class GameServerService {
     }
 
     public String refreshPasswordAndGet(GameServer server) {
-        refreshRconPassword(server);
+        if (refreshRconPassword(server) != null) {
+            saveChanges(Collections.singletonList(server));
+        }
         return server.getRconPassword();
     }
 
@@ -1,6 +1,5 @@
 package com.ugcleague.ops.service;
 
-import com.codahale.metrics.CachedGauge;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
@@ -10,6 +9,7 @@ import com.ugcleague.ops.domain.document.GameServer;
 import com.ugcleague.ops.domain.document.Incident;
 import com.ugcleague.ops.repository.mongo.GameServerRepository;
 import com.ugcleague.ops.service.util.MetricNames;
+import com.ugcleague.ops.service.util.RegionAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,7 +19,6 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.PostConstruct;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,16 +33,19 @@ public class MetricsService {
     private final GameServerRepository gameServerRepository;
     private final DiscordService discordService;
     private final IncidentService incidentService;
+    private final GameServerHistoryService historyService;
 
     @Autowired
     public MetricsService(MetricRegistry metricRegistry, HealthCheckRegistry healthCheckRegistry,
-                          GameServerService gameServerService, GameServerRepository gameServerRepository, DiscordService discordService, IncidentService incidentService) {
+                          GameServerService gameServerService, GameServerRepository gameServerRepository, DiscordService discordService, IncidentService incidentService,
+                          GameServerHistoryService historyService) {
         this.metricRegistry = metricRegistry;
         this.healthCheckRegistry = healthCheckRegistry;
         this.gameServerService = gameServerService;
         this.gameServerRepository = gameServerRepository;
         this.discordService = discordService;
         this.incidentService = incidentService;
+        this.historyService = historyService;
     }
 
     @PostConstruct
@@ -82,88 +84,36 @@ public class MetricsService {
     }
 
     private void initGameServerMetrics() {
-        Map<String, List<Gauge<Integer>>> pingGaugesPerRegion = new LinkedHashMap<>();
-        Map<String, List<Gauge<Integer>>> playersGaugesPerRegion = new LinkedHashMap<>();
+        RegionAggregator aggregator = historyService.getRegionAggregator();
+        Set<String> regions = new LinkedHashSet<>();
         for (GameServer server : gameServerRepository.findAll()) {
-            Gauge<Integer> ping = metricRegistry.register(MetricNames.gameServerPing(server), new CachedGauge<Integer>(5, TimeUnit.MINUTES) {
-                @Override
-                protected Integer loadValue() {
-                    // truncate negative values that signal abnormal conditions
-                    Integer value = gameServerService.getServerPing(server);
-                    return value != null && value > 0 ? value : null;
-                }
-            });
-            Gauge<Integer> players = metricRegistry.register(MetricNames.gameServerPlayers(server), new CachedGauge<Integer>(5, TimeUnit.MINUTES) {
-                @Override
-                protected Integer loadValue() {
-                    // truncate negative values that signal abnormal conditions
-                    Integer value = gameServerService.getServerPlayerCount(server);
-                    return value != null && value >= 0 ? value : null;
-                }
+            historyService.seed(server);
+            // read-only views over the latest polled sample, truncating negative values that signal abnormal conditions
+            metricRegistry.register(MetricNames.gameServerPing(server), (Gauge<Integer>) () -> {
+                int value = historyService.getLatestPing(server);
+                return value > 0 ? value : null;
             });
-            String region = server.getShortName().substring(0, 3);
-            pingGaugesPerRegion.computeIfAbsent(region, k -> new ArrayList<>()).add(ping);
-            playersGaugesPerRegion.computeIfAbsent(region, k -> new ArrayList<>()).add(players);
-        }
-
-        // compute gs.ping.* for average region-wide ping
-        for (Map.Entry<String, List<Gauge<Integer>>> entry : pingGaugesPerRegion.entrySet()) {
-            String region = entry.getKey();
-            metricRegistry.register("gs.ping." + region, new CachedGauge<Double>(1, TimeUnit.MINUTES) {
-                @Override
-                protected Double loadValue() {
-                    return entry.getValue().stream()
-                        .map(Gauge::getValue)
-                        .filter(v -> v != null)
-                        .collect(Collectors.averagingInt(v -> v));
-                }
+            metricRegistry.register(MetricNames.gameServerPlayers(server), (Gauge<Integer>) () -> {
+                int value = historyService.getLatestPlayers(server);
+                return value >= 0 ? value : null;
             });
+            regions.add(historyService.getRegion(server));
         }
 
-        // compute gs.players.count.* and avg.* for player total and average per region
-        List<Gauge<Integer>> playerCounts = new ArrayList<>();
-        List<Gauge<Double>> playerAverages = new ArrayList<>();
-        for (Map.Entry<String, List<Gauge<Integer>>> entry : playersGaugesPerRegion.entrySet()) {
-            String region = entry.getKey();
-            Gauge<Integer> sum = metricRegistry.register("gs.players.count." + region, new CachedGauge<Integer>(1, TimeUnit.MINUTES) {
-                @Override
-                protected Integer loadValue() {
-                    return entry.getValue().stream()
-                        .map(Gauge::getValue)
-                        .filter(v -> v != null)
-                        .collect(Collectors.summingInt(v -> v));
-                }
-            });
-            Gauge<Double> average = metricRegistry.register("gs.players.avg." + region, new CachedGauge<Double>(1, TimeUnit.MINUTES) {
-                @Override
-                protected Double loadValue() {
-                    return entry.getValue().stream()
-                        .map(Gauge::getValue)
-                        .filter(v -> v != null)
-                        .collect(Collectors.averagingInt(v -> v));
-                }
-            });
-            playerCounts.add(sum);
-            playerAverages.add(average);
+        // region-wide aggregates are kept up to date by each status refresh, reading them is O(1)
+        for (String region : regions) {
+            aggregator.ensureRegion(region);
+            // compute gs.ping.* for average region-wide ping
+            metricRegistry.register("gs.ping." + region, (Gauge<Double>) () -> aggregator.getAveragePing(region));
+            // compute gs.players.count.* and avg.* for player total and average per region
+            metricRegistry.register("gs.players.count." + region,
+                (Gauge<Integer>) () -> Math.toIntExact(aggregator.getPlayerCount(region)));
+            metricRegistry.register("gs.players.avg." + region, (Gauge<Double>) () -> aggregator.getAveragePlayers(region));
         }
 
-        // compute gs.players.count and avg for worldwide player count and average player count
-        metricRegistry.register("gs.players.count", new CachedGauge<Integer>(1, TimeUnit.MINUTES) {
-            @Override
-            protected Integer loadValue() {
-                return playerCounts.stream().map(Gauge::getValue)
-                    .filter(v -> v != null)
-                    .collect(Collectors.summingInt(v -> v));
-            }
-        });
-        metricRegistry.register("gs.players.avg", new CachedGauge<Double>(1, TimeUnit.MINUTES) {
-            @Override
-            protected Double loadValue() {
-                return playerAverages.stream().map(Gauge::getValue)
-                    .filter(v -> v != null)
-                    .collect(Collectors.averagingDouble(v -> v));
-            }
-        });
+        // compute gs.players.count and avg for worldwide player count and the average of the region averages
+        metricRegistry.register("gs.players.count", (Gauge<Integer>) () -> Math.toIntExact(aggregator.getPlayerCount()));
+        metricRegistry.register("gs.players.avg", (Gauge<Double>) aggregator::getAverageOfRegionPlayers);
     }
 
     private void initGameServerHealthChecks() {
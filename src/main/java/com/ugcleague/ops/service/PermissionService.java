@@ -1,52 +1,77 @@
 package com.ugcleague.ops.service;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.Timed;
 import com.ugcleague.ops.config.LeagueProperties;
 import com.ugcleague.ops.domain.document.*;
-import com.ugcleague.ops.domain.util.PermissionProvider;
 import com.ugcleague.ops.repository.mongo.PermissionRepository;
 import com.ugcleague.ops.service.discord.command.Command;
+import com.ugcleague.ops.service.discord.util.DiscordSubscriber;
 import com.ugcleague.ops.service.discord.util.DiscordUtil;
-import org.apache.commons.lang3.tuple.Triple;
+import com.ugcleague.ops.service.util.CoalescingQueue;
+import com.ugcleague.ops.service.util.MetricNames;
+import com.ugcleague.ops.service.util.PermissionCache;
+import com.ugcleague.ops.service.util.PermissionGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import sx.blah.discord.api.events.EventSubscriber;
+import sx.blah.discord.handle.impl.events.*;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IGuild;
 import sx.blah.discord.handle.obj.IRole;
 import sx.blah.discord.handle.obj.IUser;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
+import java.util.function.Consumer;
 
 @Service
 @Transactional
-public class PermissionService {
+public class PermissionService implements DiscordSubscriber {
 
     private static final Logger log = LoggerFactory.getLogger(PermissionService.class);
+    private static final int BATCH_SIZE = 100;
 
     private final LeagueProperties properties;
     private final DiscordService discordService;
     private final PermissionRepository permissionRepository;
     private final DiscordCacheService cacheService;
-    private final Map<Triple<String, String, String>, Boolean> permissionCache = new ConcurrentHashMap<>();
+    private final MetricRegistry metricRegistry;
+    private final PermissionCache permissionCache;
+    private volatile PermissionGraph permissionGraph = new PermissionGraph();
+    private final CoalescingQueue<String, PendingEntity> pendingUsers = new CoalescingQueue<>(PendingEntity::merge);
+    private final CoalescingQueue<String, PendingEntity> pendingGuilds = new CoalescingQueue<>(PendingEntity::merge);
+    private final CoalescingQueue<String, PendingEntity> pendingChannels = new CoalescingQueue<>(PendingEntity::merge);
 
     @Autowired
     public PermissionService(LeagueProperties properties, DiscordService discordService,
-                             PermissionRepository permissionRepository, DiscordCacheService cacheService) {
+                             PermissionRepository permissionRepository, DiscordCacheService cacheService,
+                             MetricRegistry metricRegistry) {
         this.properties = properties;
         this.discordService = discordService;
         this.permissionRepository = permissionRepository;
         this.cacheService = cacheService;
+        this.metricRegistry = metricRegistry;
+        LeagueProperties.Discord discord = properties.getDiscord();
+        this.permissionCache = new PermissionCache(discord.getPermissionCacheSize(), discord.getPermissionCacheTtl());
     }
 
     @PostConstruct
     private void configure() {
+        metricRegistry.register(MetricNames.PERMISSION_CACHE_HITS, (Gauge<Long>) () -> permissionCache.stats().hitCount());
+        metricRegistry.register(MetricNames.PERMISSION_CACHE_MISSES, (Gauge<Long>) () -> permissionCache.stats().missCount());
+        metricRegistry.register(MetricNames.PERMISSION_CACHE_EVICTIONS, (Gauge<Long>) () -> permissionCache.stats().evictionCount());
+        metricRegistry.register(MetricNames.PERMISSION_CACHE_SIZE, (Gauge<Long>) permissionCache::size);
+        discordService.subscribe(this);
         if (permissionRepository.count() == 0) {
             log.debug("Performing permission first-time setup");
 
@@ -112,6 +137,7 @@ public class PermissionService {
 
             cacheService.saveGuild(guild);
         }
+        reloadGraph();
         log.debug("Permissions: {}", permissionRepository.findAll());
     }
 
@@ -161,14 +187,15 @@ public class PermissionService {
      */
     @Timed
     public boolean canPerform(String permissionName, IUser user, IChannel channel) {
-        Triple<String, String, String> key = Triple.of(permissionName, user == null ? "0" : user.getID(), channel.getID());
-        Boolean cached = permissionCache.get(key);
+        String userId = user == null ? "0" : user.getID();
+        Boolean cached = permissionCache.get(permissionName, userId, channel.getID());
         if (cached != null) {
             return cached;
         } else {
             boolean result = slowCanPerform(permissionName, user, channel);
             log.debug("Caching result of {} -> {}", keyToString(permissionName, user, channel), result);
-            permissionCache.put(key, result);
+            permissionCache.put(permissionName, userId, channel.getID(),
+                channel.isPrivate() ? null : channel.getGuild().getID(), result);
             return result;
         }
     }
@@ -191,82 +218,272 @@ public class PermissionService {
     }
 
     private boolean canPerform(String permissionName, IUser user, IChannel channel, IGuild guild) {
-        Optional<Permission> p = permissionRepository.findByName(permissionName);
-        if (!p.isPresent()) {
+        PermissionGraph graph = permissionGraph;
+        if (!graph.isDefined(permissionName)) {
             log.warn("Permission with key '{}' is not defined", permissionName);
             return false;
         }
-        Permission permission = p.get();
-        Set<Permission> allowed = permissionSet(user, channel, guild, PermissionProvider::getAllowed);
-        Set<Permission> denied = permissionSet(user, channel, guild, PermissionProvider::getDenied);
-        return !denied.contains(permission) && ((allowed.contains(permission)) || permission.isDefaultAllow());
+        List<IRole> roles = user == null ? Collections.singletonList(guild.getEveryoneRole()) : user.getRolesForGuild(guild);
+        queueEntities(graph, user, channel, guild, roles);
+        List<String> roleIds = new ArrayList<>(roles.size());
+        for (IRole role : roles) {
+            roleIds.add(role.getID());
+        }
+        return graph.canPerform(permissionName, user == null ? "0" : user.getID(), guild.getID(), roleIds, channel.getID());
     }
 
-    private Set<Permission> permissionSet(IUser user, IChannel channel, IGuild guild, Function<PermissionProvider, Set<Permission>> mapper) {
-        Set<Permission> set = new HashSet<>();
+    /**
+     * Queue the user, guild, roles and channel involved in a permission decision to be stored, if they are not yet
+     * known or have no name. The decision itself never waits for these writes.
+     */
+    private void queueEntities(PermissionGraph graph, IUser user, IChannel channel, IGuild guild, List<IRole> roles) {
+        String userId = user == null ? "0" : user.getID();
+        if (!graph.hasNamedUser(userId)) {
+            pendingUsers.offer(userId, new PendingEntity(userId, user == null ? "anyone" : user.getName()));
+        }
+        if (!graph.hasNamedGuild(guild.getID()) || roles.stream().anyMatch(r -> !graph.hasRole(r.getID()))) {
+            PendingEntity pending = new PendingEntity(guild.getID(), guild.getName());
+            for (IRole role : roles) {
+                pending.roles.put(role.getID(), role.getName());
+            }
+            pendingGuilds.offer(guild.getID(), pending);
+        }
+        if (!graph.hasNamedChannel(channel.getID())) {
+            PendingEntity pending = new PendingEntity(channel.getID(), channel.getName());
+            pending.isPrivate = channel.isPrivate();
+            pendingChannels.offer(channel.getID(), pending);
+        }
+    }
 
-        // collect bot operation permissions from the given user
-        DiscordUser cachedUser = cacheService.findUserById(user == null ? "0" : user.getID()).orElseGet(() -> cacheService.saveUser(new DiscordUser(user)));
-        if (cachedUser.getName() == null) {
-            cachedUser.setName(user == null ? "anyone" : user.getName());
-            cachedUser = cacheService.saveUser(cachedUser);
+    /**
+     * Store the entities queued by permission decisions, a batch at a time.
+     */
+    @Scheduled(cron = "*/5 * * * * ?")
+    public void flushPendingEntities() {
+        flush(pendingUsers, this::flushUsers);
+        flush(pendingGuilds, this::flushGuilds);
+        flush(pendingChannels, this::flushChannels);
+    }
+
+    /**
+     * Store what is still queued before shutting down, since the queues only live in memory.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.debug("Storing entities involved in permission decisions before shutdown");
+        flushPendingEntities();
+    }
+
+    private void flush(CoalescingQueue<String, PendingEntity> queue, Consumer<List<PendingEntity>> store) {
+        for (List<PendingEntity> batch = queue.drain(BATCH_SIZE); !batch.isEmpty(); batch = queue.drain(BATCH_SIZE)) {
+            try {
+                store.accept(batch);
+            } catch (Exception e) {
+                // queue the failed batch again right away, so the next flush retries it
+                batch.forEach(pending -> queue.offer(pending.id, pending));
+                log.warn("Could not store entities involved in permission decisions", e);
+                return;
+            }
         }
-        set.addAll(mapper.apply(cachedUser));
+    }
 
-        // collect bot operation permissions from the given guild
-        DiscordGuild cachedGuild = cacheService.findGuildById(guild.getID()).orElseGet(() -> cacheService.saveGuild(new DiscordGuild(guild)));
-        if (cachedGuild.getName() == null) {
-            cachedGuild.setName(guild.getName());
-            cachedGuild = cacheService.saveGuild(cachedGuild);
+    private void flushUsers(List<PendingEntity> batch) {
+        Map<String, DiscordUser> existing = new HashMap<>();
+        cacheService.findUsersById(ids(batch)).forEach(u -> existing.put(u.getId(), u));
+        List<DiscordUser> changed = new ArrayList<>();
+        for (PendingEntity pending : batch) {
+            DiscordUser user = existing.get(pending.id);
+            if (user == null) {
+                user = new DiscordUser(pending.id);
+                user.setName(pending.name);
+                changed.add(user);
+            } else if (user.getName() == null) {
+                user.setName(pending.name);
+                changed.add(user);
+            }
+        }
+        if (!changed.isEmpty()) {
+            log.debug("Storing {} users involved in permission decisions", changed.size());
+            cacheService.saveUsers(changed);
         }
-        set.addAll(mapper.apply(cachedGuild));
+    }
 
-        // collect bot operation permissions from the roles of the given user in the given guild
-        List<IRole> roles = user == null ? Collections.singletonList(guild.getEveryoneRole()) : user.getRolesForGuild(guild);
-        Set<DiscordRole> cachedRoles = cachedGuild.getRoles();
-        boolean rolesModified = false;
-        for (IRole role : roles) {
-            DiscordRole cachedRole = null;
-            for (DiscordRole innerRole : cachedRoles) {
-                if (role.getID().equals(innerRole.getId())) {
-                    cachedRole = innerRole;
-                    break;
+    private void flushGuilds(List<PendingEntity> batch) {
+        Map<String, DiscordGuild> existing = new HashMap<>();
+        cacheService.findGuildsById(ids(batch)).forEach(g -> existing.put(g.getId(), g));
+        List<DiscordGuild> changed = new ArrayList<>();
+        for (PendingEntity pending : batch) {
+            DiscordGuild guild = existing.get(pending.id);
+            boolean modified = false;
+            if (guild == null) {
+                guild = new DiscordGuild(pending.id);
+                modified = true;
+            }
+            if (guild.getName() == null) {
+                guild.setName(pending.name);
+                modified = true;
+            }
+            Set<DiscordRole> cachedRoles = guild.getRoles();
+            for (Map.Entry<String, String> entry : pending.roles.entrySet()) {
+                if (cachedRoles.stream().noneMatch(r -> entry.getKey().equals(r.getId()))) {
+                    DiscordRole role = new DiscordRole(entry.getKey());
+                    role.setName(entry.getValue());
+                    cachedRoles.add(role);
+                    modified = true;
                 }
             }
-            if (cachedRole == null) {
-                cachedRole = new DiscordRole(role.getID());
-                cachedRole.setName(role.getName());
-                cachedRoles.add(cachedRole);
-                rolesModified = true;
+            if (modified) {
+                changed.add(guild);
             }
-            set.addAll(mapper.apply(cachedRole));
         }
-        if (rolesModified) {
-            cacheService.saveGuild(cachedGuild);
+        if (!changed.isEmpty()) {
+            log.debug("Storing {} guilds involved in permission decisions", changed.size());
+            cacheService.saveGuilds(changed);
         }
+    }
 
-        // collect bot operation permissions from the given channel
-        DiscordChannel cachedChannel = cacheService.findChannelById(channel.getID()).orElseGet(() -> cacheService.saveChannel(new DiscordChannel(channel)));
-        if (cachedChannel == null) {
-            cachedChannel = new DiscordChannel();
-            cachedChannel.setId(channel.getID());
-            cachedChannel.setName(channel.getName());
-            cachedChannel.setPrivate(channel.isPrivate());
-            cachedChannel = cacheService.saveChannel(cachedChannel);
+    private void flushChannels(List<PendingEntity> batch) {
+        Map<String, DiscordChannel> existing = new HashMap<>();
+        cacheService.findChannelsById(ids(batch)).forEach(c -> existing.put(c.getId(), c));
+        List<DiscordChannel> changed = new ArrayList<>();
+        for (PendingEntity pending : batch) {
+            DiscordChannel channel = existing.get(pending.id);
+            if (channel == null) {
+                channel = new DiscordChannel(pending.id);
+                channel.setName(pending.name);
+                channel.setPrivate(pending.isPrivate);
+                changed.add(channel);
+            } else if (channel.getName() == null) {
+                channel.setName(pending.name);
+                changed.add(channel);
+            }
         }
-        if (cachedChannel.getName() == null) {
-            cachedChannel.setName(channel.getName());
-            cachedChannel = cacheService.saveChannel(cachedChannel);
+        if (!changed.isEmpty()) {
+            log.debug("Storing {} channels involved in permission decisions", changed.size());
+            cacheService.saveChannels(changed);
         }
-        set.addAll(mapper.apply(cachedChannel));
+    }
 
-        return set;
+    private List<String> ids(List<PendingEntity> batch) {
+        List<String> ids = new ArrayList<>(batch.size());
+        for (PendingEntity pending : batch) {
+            ids.add(pending.id);
+        }
+        return ids;
     }
 
-    @Scheduled(cron = "0 0 5 * * *") // 5am every day
+    // Permission graph synchronization
+    ///////////////////////////////////////
+
+    /**
+     * Rebuild the permission graph from the database.
+     */
+    public synchronized void reloadGraph() {
+        PermissionGraph graph = new PermissionGraph();
+        permissionRepository.findAll().forEach(graph::update);
+        cacheService.findAllGuilds().forEach(graph::update);
+        cacheService.findAllChannels().forEach(graph::update);
+        cacheService.findAllUsers().forEach(graph::update);
+        permissionGraph = graph;
+        permissionCache.invalidateAll();
+    }
+
+    @EventListener
+    public synchronized void onDocumentSaved(AfterSaveEvent<?> event) {
+        Object source = event.getSource();
+        PermissionGraph graph = permissionGraph;
+        if (source instanceof Permission) {
+            graph.update((Permission) source);
+            permissionCache.invalidateAll();
+        } else if (source instanceof DiscordUser) {
+            DiscordUser user = (DiscordUser) source;
+            if (graph.update(user)) {
+                permissionCache.invalidateUser(user.getId());
+            }
+        } else if (source instanceof DiscordGuild) {
+            DiscordGuild guild = (DiscordGuild) source;
+            if (graph.update(guild)) {
+                permissionCache.invalidateGuild(guild.getId());
+            }
+        } else if (source instanceof DiscordChannel) {
+            DiscordChannel channel = (DiscordChannel) source;
+            if (graph.update(channel)) {
+                permissionCache.invalidateChannel(channel.getId());
+            }
+        }
+    }
+
+    @EventListener
+    public void onDocumentDeleted(AfterDeleteEvent<?> event) {
+        Class<?> type = event.getType();
+        if (Permission.class.equals(type) || DiscordUser.class.equals(type)
+            || DiscordGuild.class.equals(type) || DiscordChannel.class.equals(type)) {
+            // deletions only carry the query, not the document
+            reloadGraph();
+        }
+    }
+
+    // Permission cache invalidation
+    ///////////////////////////////////
+
     public void evict() {
         log.info("Permission cache invalidated for ALL entries");
-        permissionCache.clear();
+        permissionCache.invalidateAll();
+    }
+
+    public void evict(IUser user) {
+        log.debug("Permission cache invalidated for user {}", DiscordUtil.toString(user));
+        permissionCache.invalidateUser(user.getID());
+    }
+
+    public void evict(IChannel channel) {
+        log.debug("Permission cache invalidated for channel {}", DiscordUtil.toString(channel));
+        permissionCache.invalidateChannel(channel.getID());
+    }
+
+    public void evict(IGuild guild) {
+        log.debug("Permission cache invalidated for guild {}", guild.getName());
+        permissionCache.invalidateGuild(guild.getID());
+    }
+
+    @EventSubscriber
+    public void onUserRoleUpdate(UserRoleUpdateEvent event) {
+        permissionCache.invalidateUser(event.getUser().getID(), event.getGuild().getID());
+    }
+
+    @EventSubscriber
+    public void onUserJoin(UserJoinEvent event) {
+        permissionCache.invalidateUser(event.getUser().getID(), event.getGuild().getID());
+    }
+
+    @EventSubscriber
+    public void onUserLeave(UserLeaveEvent event) {
+        permissionCache.invalidateUser(event.getUser().getID(), event.getGuild().getID());
+    }
+
+    @EventSubscriber
+    public void onRoleUpdate(RoleUpdateEvent event) {
+        permissionCache.invalidateGuild(event.getGuild().getID());
+    }
+
+    @EventSubscriber
+    public void onRoleDelete(RoleDeleteEvent event) {
+        permissionCache.invalidateGuild(event.getGuild().getID());
+    }
+
+    @EventSubscriber
+    public void onGuildLeave(GuildLeaveEvent event) {
+        permissionCache.invalidateGuild(event.getGuild().getID());
+    }
+
+    @EventSubscriber
+    public void onChannelUpdate(ChannelUpdateEvent event) {
+        permissionCache.invalidateChannel(event.getNewChannel().getID());
+    }
+
+    @EventSubscriber
+    public void onChannelDelete(ChannelDeleteEvent event) {
+        permissionCache.invalidateChannel(event.getChannel().getID());
     }
 
     public Optional<Permission> findPermissionByName(String name) {
@@ -276,4 +493,24 @@ public class PermissionService {
     public List<Permission> findAllPermissions() {
         return permissionRepository.findAll();
     }
+
+    /**
+     * An entity waiting to be stored, with the names seen when it was queued.
+     */
+    private static class PendingEntity {
+        private final String id;
+        private final String name;
+        private final Map<String, String> roles = new LinkedHashMap<>();
+        private boolean isPrivate;
+
+        private PendingEntity(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        private PendingEntity merge(PendingEntity other) {
+            roles.putAll(other.roles);
+            return this;
+        }
+    }
 }
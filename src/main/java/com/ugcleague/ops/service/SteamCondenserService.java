@@ -6,7 +6,9 @@ import com.github.koraktor.steamcondenser.steam.SteamPlayer;
 import com.github.koraktor.steamcondenser.steam.community.WebApi;
 import com.google.gson.Gson;
 import com.ugcleague.ops.config.LeagueProperties;
+import com.ugcleague.ops.service.util.A2SClient;
 import com.ugcleague.ops.service.util.SourceServer;
+import com.ugcleague.ops.service.util.StatusProbe;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -18,13 +20,19 @@ import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * A collection of methods available from the Steam Condenser library, wrapped in checks and enhanced with refreshing and retrying
@@ -40,6 +48,7 @@ public class SteamCondenserService {
     private final LeagueProperties leagueProperties;
 
     private Integer lastCachedVersion = 0;
+    private A2SClient queryClient;
 
     @Autowired
     public SteamCondenserService(LeagueProperties leagueProperties) throws WebApiException {
@@ -53,6 +62,82 @@ public class SteamCondenserService {
         } catch (WebApiException e) {
             log.error("Invalid Steam API key", e);
         }
+        try {
+            queryClient = new A2SClient(leagueProperties.getGameServers().getQueryTimeout(), TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            log.error("Could not open server query channel", e);
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (queryClient != null) {
+            queryClient.close();
+        }
+    }
+
+    /**
+     * Ping the server at the given <code>address</code> through the shared query channel.
+     *
+     * @param address the server address, in "host:port" form
+     * @return the latency of this server in milliseconds, or -2 if the query failed
+     */
+    public Integer ping(String address) {
+        return query(address, queryClient::ping, -2);
+    }
+
+    /**
+     * Get the number of connected players of the server at the given <code>address</code> through the shared query
+     * channel.
+     *
+     * @param address the server address, in "host:port" form
+     * @return the amount of players on this server, or -2 if the query failed
+     */
+    public Integer players(String address) {
+        return query(address, a -> queryClient.players(a).thenApply(List::size), -2);
+    }
+
+    /**
+     * Get the server information (mapName, maxPlayers, gameVersion, tvPort, etc.) of the server at the given
+     * <code>address</code> through the shared query channel.
+     *
+     * @param address the server address, in "host:port" form
+     * @return the server information, could be empty if the query failed
+     */
+    public Map<String, Object> info(String address) {
+        return query(address, queryClient::info, Collections.emptyMap());
+    }
+
+    /**
+     * Get the ping, player count, max players, map, version and SourceTV port of the server at the given
+     * <code>address</code> from a single query round trip.
+     *
+     * @param address the server address, in "host:port" form
+     * @return the server status, or an unreachable status if the query failed
+     * @see StatusProbe#unreachable()
+     */
+    public StatusProbe probe(String address) {
+        return query(address, queryClient::probe, StatusProbe.unreachable());
+    }
+
+    public Map<String, String> rules(String address) {
+        return query(address, queryClient::rules, Collections.emptyMap());
+    }
+
+    private <T> T query(String address, Function<InetSocketAddress, CompletableFuture<T>> request, T fallback) {
+        if (queryClient == null || address == null) {
+            return fallback;
+        }
+        try {
+            return request.apply(A2SClient.toSocketAddress(address)).get();
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid server address {}: {}", address, e.toString());
+        } catch (ExecutionException e) {
+            log.debug("Query to {} failed: {}", address, e.getCause().toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fallback;
     }
 
     /**
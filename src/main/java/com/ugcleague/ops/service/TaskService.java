@@ -3,6 +3,7 @@ package com.ugcleague.ops.service;
 import com.ugcleague.ops.domain.document.ScheduledTask;
 import com.ugcleague.ops.repository.mongo.ScheduledTaskRepository;
 import com.ugcleague.ops.service.util.RunnableTask;
+import com.ugcleague.ops.service.util.SweepPlanner;
 import it.sauronsoftware.cron4j.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,14 +17,16 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Service
 @Transactional
 public class TaskService implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(TaskService.class);
+    private static final long TASK_START_WINDOW = 30000;
 
     private final ScheduledTaskRepository repository;
     private final UpdatesFeedService updatesFeedService;
@@ -32,6 +35,13 @@ public class TaskService implements DisposableBean {
     private final Scheduler scheduler;
     private final Map<String, RunnableTask> runnables = new LinkedHashMap<>();
     private final Executor taskExecutor;
+    private final SweepPlanner startPlanner = new SweepPlanner(TASK_START_WINDOW, null);
+    // waits for the delayed task starts and hands them to the task executor, so no thread sleeps until a task starts
+    private final ScheduledExecutorService starter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "task-start");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Autowired
     public TaskService(ScheduledTaskRepository repository, UpdatesFeedService updatesFeedService,
@@ -48,16 +58,21 @@ public class TaskService implements DisposableBean {
     @PostConstruct
     private void configure() {
         Runnable gameUpdates = updatesFeedService::refreshUpdatesFeed;
+        // the "status" task only checks game updates, status refreshes belong to "status_poll"
         Runnable status = gameServerService::updateGameServers;
+        Runnable statusPoll = gameServerService::refreshDueServerStatus;
         Runnable passwords = expireStatusService::refreshExpireDates;
 
         String statusTriggers = "1-56/5 2-6,12-16,18-23 * * mon,wed,fri|1-31/30 0-1,7-11,17-19 * * mon,wed,fri|1-31/30 * * * tue,thu,sat,sun";
         String passwordTriggers = "3-58/5 2-6,12-16,18-23 * * mon,wed,fri|3-33/30 0-1,7-11,17-19 * * mon,wed,fri|3-33/30 * * * tue,thu,sat,sun";
+        // each server decides how often it's polled, see PollSchedule
+        String statusPollTriggers = "* * * * *";
         String updateTriggers = "*/5 * * * mon-fri|0 * * * sat-sun";
 
         schedule(getTask("hlds_announce", updateTriggers), gameUpdates);
         schedule(getTask("status", statusTriggers), status);
         schedule(getTask("passwords", passwordTriggers), passwords);
+        schedule(getTask("status_poll", statusPollTriggers), statusPoll);
 
         log.info("Starting task scheduler");
         scheduler.start();
@@ -68,7 +83,9 @@ public class TaskService implements DisposableBean {
     }
 
     private ScheduledTask schedule(ScheduledTask task, Runnable runnable) {
-        RunnableTask runnableTask = new RunnableTask(task, runnable);
+        // tasks start at a fixed offset into their minute so they don't all fire together
+        RunnableTask runnableTask = new RunnableTask(task, runnable, startPlanner.offset(task.getName()), starter,
+            taskExecutor);
         log.debug("Scheduling task {}", task.humanString());
         String taskId = scheduler.schedule(task.getPattern(), runnableTask);
         task.setTaskId(taskId);
@@ -106,6 +123,7 @@ public class TaskService implements DisposableBean {
     @Override
     public void destroy() throws Exception {
         stop();
+        starter.shutdownNow();
     }
 
     public List<ScheduledTask> findAll() {
@@ -124,17 +142,7 @@ public class TaskService implements DisposableBean {
         RunnableTask runnableTask = runnables.get(task.getName());
         if (runnableTask != null) {
             log.debug("Scheduling task as a one-off execution: {}", task.getName());
-            CompletableFuture.runAsync(() -> {
-                if (delay > 0) {
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException e) {
-                        log.warn("Waiting to start task interrupted: {}", e.toString());
-                    }
-                }
-            }, taskExecutor)
-                .thenRun(runnableTask.getRunnable())
-                .thenRun(() -> log.info("One-off execution of {} was completed", task.getName()));
+            runnableTask.runOnce(delay);
         } else {
             log.warn("Could not find a runnable for task named {}", task.getName());
         }
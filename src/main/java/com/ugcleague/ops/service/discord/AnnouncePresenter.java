@@ -270,10 +270,11 @@ public class AnnouncePresenter {
                     IChannel channel = client.getChannelByID(sub.getChannel().getId());
                     if (channel != null) {
                         log.debug("Making an announcement from {} to {}", publisherName, channel.getName());
+                        // announcements fired together are merged into as few messages as possible
                         if (prefixPublisherName) {
-                            commandService.answerToChannel(channel, "**[" + publisherName + "]** " + message, tts);
+                            discordService.queueMessage(channel, "**[" + publisherName + "]** " + message, tts);
                         } else {
-                            commandService.answerToChannel(channel, message, tts);
+                            discordService.queueMessage(channel, message, tts);
                         }
                     } else {
                         log.warn("Could not find a channel with id {} to send the announcement", sub.getChannel().getId());
@@ -32,12 +32,9 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static com.ugcleague.ops.service.discord.CommandService.newParser;
-import static com.ugcleague.ops.service.discord.util.DiscordUtil.deleteInBatch;
-import static com.ugcleague.ops.service.discord.util.DiscordLimiter.acquireDelete;
 import static com.ugcleague.ops.util.DateUtil.formatHuman;
 import static java.util.Arrays.asList;
 
@@ -293,25 +290,7 @@ public class BotPresenter {
                     break;
                 }
             }
-            if (c.isPrivate() || toDelete.size() == 1) {
-                AtomicBoolean abort = new AtomicBoolean(false);
-                for (IMessage message : toDelete) {
-                    if (abort.get()) {
-                        break;
-                    }
-                    RequestBuffer.request(() -> {
-                        try {
-                            acquireDelete();
-                            message.delete();
-                        } catch (MissingPermissionsException | DiscordException e) {
-                            log.warn("Could not delete message - aborting", e);
-                            abort.set(true);
-                        }
-                    });
-                }
-            } else {
-                deleteInBatch(c, toDelete);
-            }
+            discordService.deleteMessages(c, toDelete);
             c.getMessages().setCacheCapacity(cap);
         }
     }
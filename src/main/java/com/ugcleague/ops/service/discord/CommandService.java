@@ -1,9 +1,14 @@
 package com.ugcleague.ops.service.discord;
 
+import com.codahale.metrics.MetricRegistry;
+import com.ugcleague.ops.config.LeagueProperties;
 import com.ugcleague.ops.service.DiscordService;
 import com.ugcleague.ops.service.PermissionService;
 import com.ugcleague.ops.service.discord.command.*;
-import com.ugcleague.ops.service.discord.util.DiscordSubscriber;
+import com.ugcleague.ops.service.discord.command.CommandMetrics.Invocation;
+import com.ugcleague.ops.service.discord.command.CommandMetrics.Outcome;
+import com.ugcleague.ops.service.discord.command.CommandMetrics.Phase;
+import com.ugcleague.ops.service.discord.command.CommandScheduler.Lane;
 import com.ugcleague.ops.service.discord.util.StatusWrapper;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
@@ -12,12 +17,9 @@ import joptsimple.OptionSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.env.MissingRequiredPropertiesException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import sx.blah.discord.api.events.EventSubscriber;
-import sx.blah.discord.handle.impl.events.MessageReceivedEvent;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IMessage;
 import sx.blah.discord.handle.obj.IUser;
@@ -25,6 +27,7 @@ import sx.blah.discord.util.DiscordException;
 import sx.blah.discord.util.MissingPermissionsException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -45,32 +48,48 @@ import static java.util.Arrays.asList;
  */
 @Service
 @Transactional
-public class CommandService implements DiscordSubscriber {
+public class CommandService {
 
     private static final Logger log = LoggerFactory.getLogger(CommandService.class);
     private static final int LENGTH_LIMIT = 2000;
+    private static final long QUEUED_COMMAND_TIMEOUT = 10;
 
     private final DiscordService discordService;
     private final PermissionService permissionService;
     private final Executor taskExecutor;
+    private final CommandScheduler commandScheduler;
+    private final CommandMetrics commandMetrics;
     private final Set<Command> commandList = new ConcurrentSkipListSet<>();
     private final Map<String, IMessage> invokerToStatusMap = new ConcurrentHashMap<>();
+    private final Map<Command, String> helpCache = new ConcurrentHashMap<>();
+    // null until the first lookup after the command list changes
+    private volatile CommandRouter router = null;
+    private volatile Map<String, String> listingCache = new ConcurrentHashMap<>();
 
     private OptionSpec<String> helpNonOptionSpec;
     private OptionSpec<Boolean> helpFullSpec;
+    private Command helpCommand;
 
     @Autowired
     public CommandService(DiscordService discordService, PermissionService permissionService,
-                          Executor taskExecutor) {
+                          Executor taskExecutor, LeagueProperties properties, MetricRegistry metricRegistry) {
         this.discordService = discordService;
         this.permissionService = permissionService;
         this.taskExecutor = taskExecutor;
+        LeagueProperties.Async async = properties.getAsync();
+        this.commandScheduler = new CommandScheduler(async.getInteractiveCommandThreads(),
+            async.getLongRunningCommandThreads(), async.getUserCommandConcurrency(), metricRegistry);
+        this.commandMetrics = new CommandMetrics(metricRegistry);
     }
 
     @PostConstruct
     private void configure() {
         initHelpCommand();
-        discordService.subscribe(this);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        commandScheduler.shutdown();
     }
 
     private void initHelpCommand() {
@@ -80,8 +99,13 @@ public class CommandService implements DiscordSubscriber {
             .withOptionalArg().ofType(Boolean.class).defaultsTo(true);
         Map<String, String> aliases = newAliasesMap();
         aliases.put("full", "-f");
-        commandList.add(CommandBuilder.anyMatch(".help").description("Show help about commands")
-            .command(this::showCommandList).unrestricted().parser(parser).optionAliases(aliases).build());
+        helpCommand = CommandBuilder.anyMatch(".help").description("Show help about commands")
+            .command(this::showCommandList).unrestricted().parser(parser).optionAliases(aliases).build();
+        commandList.add(helpCommand);
+        cacheHelp(helpCommand);
+        commandList.add(CommandBuilder.equalsTo(".cancel").description("Cancel your running or waiting queued commands")
+            .command(this::cancelCommands).unrestricted().originReplies().noParser().build());
+        invalidateRouter();
     }
 
     /**
@@ -120,141 +144,262 @@ public class CommandService implements DiscordSubscriber {
         return commandList;
     }
 
+    /**
+     * Find the command that would handle the given message content.
+     *
+     * @param content the message content
+     * @return the matching command with the longest key, or empty if no command matches
+     */
+    public Optional<Command> findCommand(String content) {
+        CommandRouter current = router;
+        if (current == null) {
+            current = rebuildRouter();
+        }
+        return current.route(content);
+    }
+
     private String showCommandList(IMessage m, OptionSet o) {
         List<String> nonOptions = o.valuesOf(helpNonOptionSpec);
+        boolean full = o.has(helpFullSpec) && o.valueOf(helpFullSpec);
         if (o.has("?")) {
             return null;
-        } else if (nonOptions.isEmpty()) {
-            if (o.has(helpFullSpec) && o.valueOf(helpFullSpec)) {
-                return "*Commands available to you*\n" + commandList.stream()
-                    .filter(c -> canExecute(c, m.getAuthor(), m.getChannel()))
+        } else if (nonOptions.isEmpty() && !full) {
+            return getCommandListing(grantedLevels(m.getAuthor(), m.getChannel()));
+        }
+        // full listings and help about many commands can take many messages, each one is sent once filled
+        try (ReplyWriter response = replyWriterFrom(m, helpCommand)) {
+            if (nonOptions.isEmpty()) {
+                Set<CommandPermission> levels = grantedLevels(m.getAuthor(), m.getChannel());
+                response.append("*Commands available to you*");
+                commandList.stream()
+                    .filter(c -> levels.contains(c.getPermission()))
                     .sorted(Comparator.naturalOrder())
-                    .map(c -> padRight("**" + c.getKey() + "**", 20) + "\t\t" + c.getDescription())
-                    .collect(Collectors.joining("\n"));
+                    .forEach(c -> response.append("\n").append(padRight("**" + c.getKey() + "**", 20))
+                        .append("\t\t").append(c.getDescription()));
             } else {
-                return "*Commands available to you*: " + commandList.stream()
+                commandList.stream()
+                    .filter(c -> isRequested(nonOptions, c.getKey().substring(1)))
                     .filter(c -> canExecute(c, m.getAuthor(), m.getChannel()))
                     .sorted(Comparator.naturalOrder())
-                    .map(Command::getKey)
-                    .collect(Collectors.joining(", ")) + " (more with `.help full`)";
-            }
-        } else {
-            List<Command> requested = commandList.stream()
-                .filter(c -> isRequested(nonOptions, c.getKey().substring(1)))
-                .filter(c -> canExecute(c, m.getAuthor(), m.getChannel()))
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.toList());
-            StringBuilder builder = new StringBuilder();
-            for (Command command : requested) {
-                appendHelp(builder, command);
+                    .forEach(c -> response.append(appendHelp(new StringBuilder(), c)));
             }
-            return builder.toString();
         }
+        return "";
     }
 
     private boolean isRequested(List<String> nonOptions, String substring) {
         return nonOptions.contains(substring);
     }
 
+    /**
+     * Find the command permission levels a user has in a channel. Users with the same levels see the same commands,
+     * so the result can be used to share command listings across users.
+     *
+     * @param user    the user requesting the listing
+     * @param channel the channel where the listing was requested
+     * @return the set of permission levels granted to the user in the channel
+     */
+    private Set<CommandPermission> grantedLevels(IUser user, IChannel channel) {
+        Set<CommandPermission> levels = EnumSet.noneOf(CommandPermission.class);
+        for (CommandPermission level : CommandPermission.values()) {
+            if (permissionService.canPerform(level.getKey(), user, channel)) {
+                levels.add(level);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Retrieve the compact listing of the commands available with the given permission levels. Listings are cached
+     * until a command is registered or unregistered. Permission changes don't affect them, since they only change which
+     * levels a user is granted. Full listings are not cached, they are written to the reply as they are rendered.
+     *
+     * @param levels the permission levels to include
+     * @return the rendered listing
+     */
+    private String getCommandListing(Set<CommandPermission> levels) {
+        // read the cache before the command list, so a listing is never stored in a newer cache than its source
+        Map<String, String> cache = listingCache;
+        return cache.computeIfAbsent(levels.toString(), k -> "*Commands available to you*: " + commandList.stream()
+            .filter(c -> levels.contains(c.getPermission()))
+            .sorted(Comparator.naturalOrder())
+            .map(Command::getKey)
+            .collect(Collectors.joining(", ")) + " (more with `.help full`)");
+    }
+
     public StringBuilder appendHelp(StringBuilder b, Command c) {
         if (c.getParser() == null) {
             return new StringBuilder(c.getDescription());
         }
+        String help = helpCache.computeIfAbsent(c, this::renderHelp);
+        if (help == null) {
+            b.append("Could not show help for **").append(c.getKey().substring(1)).append("**\n");
+        } else {
+            b.append(help);
+        }
+        return b;
+    }
+
+    private void cacheHelp(Command c) {
+        if (c.getParser() != null) {
+            String help = renderHelp(c);
+            if (help != null) {
+                helpCache.put(c, help);
+            }
+        }
+    }
+
+    private String renderHelp(Command c) {
         try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
             c.getParser().formatHelpWith(new CustomHelpFormatter(140, 5));
             c.getParser().printHelpOn(stream);
-            b.append(String.format("• Help for **%s**: %s%s\n", c.getKey(), c.getDescription(),
-                c.getPermission() != CommandPermission.NONE ? " (requires `" + c.getPermission() + "` permission)" : ""))
-                .append(new String(stream.toByteArray(), "UTF-8")).append("\n");
+            return String.format("• Help for **%s**: %s%s\n", c.getKey(), c.getDescription(),
+                c.getPermission() != CommandPermission.NONE ? " (requires `" + c.getPermission() + "` permission)" : "")
+                + new String(stream.toByteArray(), "UTF-8") + "\n";
         } catch (Exception e) {
-            b.append("Could not show help for **").append(c.getKey().substring(1)).append("**\n");
             log.warn("Could not show help", e);
+            return null;
         }
-        return b;
     }
 
-    // Discord event subscription
+    // Command execution
     //////////////////////////////////////////////
 
-    @EventSubscriber
-    public void onMessageReceived(MessageReceivedEvent event) {
-        if (discordService.isOwnUser(event.getMessage().getAuthor())) {
-            return;
-        }
-        IMessage m = event.getMessage();
-        String content = m.getContent();
-        Optional<Command> match = commandList.stream().filter(c -> c.matches(content)).findFirst();
-        if (match.isPresent()) {
-            Command command = match.get();
-            CompletableFuture.runAsync(() -> tryExecute(event, command), taskExecutor)
-                .exceptionally(t -> {
-                    log.warn("Something happened while trying to execute command", t);
-                    return null;
-                });
-        }
-    }
-
-    private void tryExecute(MessageReceivedEvent event, Command command) {
-        IMessage m = event.getMessage();
-        String content = m.getContent();
-        if (canExecute(command, m.getAuthor(), m.getChannel())) {
+    /**
+     * Execute the given command, invoked by an incoming message.
+     *
+     * @param m       the message that invoked the command
+     * @param command the command that matched the message
+     * @see MessageClassifier
+     */
+    public void onCommandMessage(IMessage m, Command command) {
+        Invocation invocation = commandMetrics.start(command);
+        boolean allowed = canExecute(command, m.getAuthor(), m.getChannel());
+        invocation.lap(Phase.PERMISSION);
+        if (allowed) {
             // cut away the "command" portion of the message
+            String content = m.getContent();
             String args = content.substring(content.indexOf(command.getKey()) + command.getKey().length());
             args = args.startsWith(" ") ? args.split(" ", 2)[1] : null;
             // add gatekeeper logic
             log.debug("User {} executing command {} with args: {}", format(m.getAuthor()),
                 command.getKey(), args);
+            // slow commands run in their own lane, and each user can only keep a few invocations running at once
             if (command.isQueued()) {
-                String key = m.getAuthor().getID();
-                String a = args;
-                FutureTask<String> task = new FutureTask<>(() -> command.execute(m, a));
-                statusReplyFrom(m, command, "Please wait...");
-                CompletableFuture.supplyAsync(() -> {
-                    task.run();
-                    try {
-                        // impose a hard-limit on duration of command execution
-                        return task.get(10, TimeUnit.MINUTES);
-                    } catch (InterruptedException | ExecutionException e) {
-                        return null;
-                    } catch (TimeoutException e) {
-                        log.warn("Command has timed out: {} -> {}", key, command.getKey());
-                        return null;
-                    }
-                }, taskExecutor)
-                    .exceptionally(t -> {
-                        log.warn("Command was terminated exceptionally", t);
-                        if (t instanceof MissingRequiredPropertiesException || t instanceof OptionException) {
-                            return ":no_good: $#@%! " + t.getMessage();
-                        } else if (t instanceof CompletionException || t instanceof TimeoutException) {
-                            return ":no_good: Command was cancelled";
-                        } else {
-                            return ":no_good: Something happened. Something happened.";
-                        }
-                    })
-                    .thenApply(s -> {
-                        log.info("Command execution done: {} -> {}", key, command.getKey());
-                        return s;
-                    })
-                    .thenAccept(response -> handleResponse(m, command, response))
-                    .thenRun(() -> statusReplyFrom(m, command, (String) null));
+                executeQueued(m, command, args, invocation);
             } else {
-                try {
-                    String response = command.execute(m, args);
-                    handleResponse(m, command, response);
-                    // ignore empty responses (no action)
-                } catch (OptionException e) {
-                    log.warn("Invalid call: {}", e.toString());
-                    helpReplyFrom(m, command, e.getMessage());
-                }
-                invokerToStatusMap.remove(m.getID());
+                executeInteractive(m, command, args, invocation);
             }
         } else {
             // fail silently
             log.debug("User {} has no permission to run {} (requires {})", format(m.getAuthor()),
                 command.getKey(), command.getPermission());
+            invocation.finish(Outcome.DENIED);
+        }
+    }
+
+    private void executeInteractive(IMessage m, Command command, String args, Invocation invocation) {
+        commandScheduler.submit(Lane.INTERACTIVE, m.getAuthor().getID(), () -> {
+            invocation.lap(Phase.WAIT);
+            try {
+                String response = execute(m, command, args, invocation);
+                handleResponse(m, command, response);
+                invocation.lap(Phase.REPLY);
+                invocation.finish(response == null ? Outcome.HELP : Outcome.SUCCESS);
+                // ignore empty responses (no action)
+            } catch (OptionException e) {
+                log.warn("Invalid call: {}", e.toString());
+                helpReplyFrom(m, command, e.getMessage());
+                invocation.lap(Phase.REPLY);
+                invocation.finish(Outcome.OPTION_ERROR);
+            }
+            invokerToStatusMap.remove(m.getID());
+            return null;
+        }).exceptionally(t -> {
+            log.warn("Something happened while trying to execute command", t);
+            invocation.finish(Outcome.FAILURE);
+            return null;
+        });
+    }
+
+    private void executeQueued(IMessage m, Command command, String args, Invocation invocation) {
+        String key = m.getAuthor().getID();
+        // impose a hard-limit on duration of command execution, enforced by interrupting the command
+        commandScheduler.submit(Lane.LONG_RUNNING, key, () -> {
+            invocation.lap(Phase.WAIT);
+            statusReplyFrom(m, command, "Please wait...");
+            invocation.skip();
+            return execute(m, command, args, invocation);
+        }, QUEUED_COMMAND_TIMEOUT, TimeUnit.MINUTES)
+            .handleAsync((response, t) -> {
+                Outcome outcome = t == null ? (response == null ? Outcome.HELP : Outcome.SUCCESS) : failureOutcome(t);
+                if (outcome == Outcome.TIMEOUT || outcome == Outcome.CANCELLED) {
+                    // the command may still be running, so the time since the last phase is not spent replying
+                    invocation.skip();
+                }
+                String result = t == null ? response : failureResponse(key, command, t);
+                log.info("Command execution done: {} -> {}", key, command.getKey());
+                handleResponse(m, command, result);
+                statusReplyFrom(m, command, (String) null);
+                invocation.lap(Phase.REPLY);
+                invocation.finish(outcome);
+                return null;
+            }, taskExecutor)
+            .exceptionally(t -> {
+                log.warn("Could not reply with the result of the command", t);
+                invocation.finish(Outcome.FAILURE);
+                return null;
+            });
+    }
+
+    private String execute(IMessage m, Command command, String args, Invocation invocation) throws OptionException {
+        OptionSet options = command.parse(args);
+        invocation.lap(Phase.PARSE);
+        String response = command.apply(m, options);
+        invocation.lap(Phase.EXECUTE);
+        return response;
+    }
+
+    private Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    private Outcome failureOutcome(Throwable t) {
+        Throwable cause = unwrap(t);
+        if (cause instanceof TimeoutException) {
+            return Outcome.TIMEOUT;
+        } else if (cause instanceof CancellationException) {
+            return Outcome.CANCELLED;
+        } else if (cause instanceof OptionException) {
+            return Outcome.OPTION_ERROR;
+        } else {
+            return Outcome.FAILURE;
         }
     }
 
+    private String failureResponse(String key, Command command, Throwable t) {
+        Throwable cause = unwrap(t);
+        if (cause instanceof TimeoutException) {
+            log.warn("Command has timed out: {} -> {}", key, command.getKey());
+            return ":no_good: Command has timed out";
+        } else if (cause instanceof CancellationException) {
+            log.info("Command was cancelled: {} -> {}", key, command.getKey());
+            return ":no_good: Command was cancelled";
+        } else {
+            // show help, like with null responses
+            log.warn("Command was terminated exceptionally", cause);
+            return null;
+        }
+    }
+
+    private String cancelCommands(IMessage m, OptionSet o) {
+        int count = commandScheduler.cancel(Lane.LONG_RUNNING, m.getAuthor().getID());
+        if (count == 0) {
+            return "You have no queued commands to cancel";
+        }
+        return "Cancelled " + count + " queued command" + (count == 1 ? "" : "s");
+    }
+
     private String format(IUser user) {
         return user.getName() + " " + user.toString();
     }
@@ -332,11 +477,8 @@ public class CommandService implements DiscordSubscriber {
     }
 
     private void tryEdit(IMessage message, String response) {
-        try {
-            discordService.editMessage(message, response);
-        } catch (InterruptedException | DiscordException | MissingPermissionsException e) {
-            log.warn("Could not edit message: {}", e.toString());
-        }
+        // status updates can come in bursts, only the latest one is sent
+        discordService.queueEdit(message, response);
     }
 
     private void tryDelete(IMessage message) {
@@ -360,6 +502,22 @@ public class CommandService implements DiscordSubscriber {
         return commonReply(message, command, response, null);
     }
 
+    /**
+     * Create a writer to reply to a command with long or slowly built content. Each message is sent as soon as it's
+     * filled, so the first part of the reply is shown before the command completes, and it must be closed once the
+     * command is done writing to send the rest.
+     *
+     * @param message the command invocation
+     * @param command the invoked command
+     * @return a writer that replies to the invocation using the reply mode of the command
+     */
+    public ReplyWriter replyWriterFrom(IMessage message, Command command) {
+        // leave room for the mention, so the reply is never split again
+        int limit = DiscordService.LENGTH_LIMIT - (command.isMention() ? message.getAuthor().mention().length() + 1 : 0);
+        // replies are queued in the same bucket, so they are sent in order
+        return new ReplyWriter(limit, chunk -> tryReplyFrom(message, command, chunk));
+    }
+
     public void fileReplyFrom(IMessage message, Command command, File file) throws InterruptedException, DiscordException, MissingPermissionsException {
         commonReply(message, command, null, file);
     }
@@ -438,10 +596,27 @@ public class CommandService implements DiscordSubscriber {
             .stream().filter(Optional::isPresent).map(Optional::get).collect(Collectors.joining(", "));
         log.info("Command {} [{}] {}", padRight(command.getKey(), 20),
             command.getPermission().name().charAt(0), description);
-        commandList.add(command);
+        if (commandList.add(command)) {
+            cacheHelp(command);
+            invalidateRouter();
+        }
         return command;
     }
 
+    private synchronized void invalidateRouter() {
+        // the router is rebuilt once on the next lookup, so registering many commands in a row stays linear
+        router = null;
+        listingCache = new ConcurrentHashMap<>();
+    }
+
+    private synchronized CommandRouter rebuildRouter() {
+        // serialized with invalidations, so a router never misses a command registered before it was built
+        if (router == null) {
+            router = new CommandRouter(new ArrayList<>(commandList));
+        }
+        return router;
+    }
+
     private <T> Optional<String> opt(T value, String prefix, String suffix, T ignoredValue) {
         return Optional.ofNullable(value)
             .map(v -> v.equals(ignoredValue) ? null : v)
@@ -461,5 +636,8 @@ public class CommandService implements DiscordSubscriber {
         }
         log.info("Removing {}", command.getKey());
         commandList.remove(command);
+        helpCache.remove(command);
+        commandMetrics.remove(command);
+        invalidateRouter();
     }
 }
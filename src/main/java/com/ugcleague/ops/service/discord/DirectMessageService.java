@@ -0,0 +1,94 @@
+package com.ugcleague.ops.service.discord;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ugcleague.ops.service.DiscordService;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import sx.blah.discord.handle.obj.IMessage;
+import sx.blah.discord.handle.obj.IUser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the same private message to many users at once. Every recipient has its own rate limit bucket, so the messages
+ * are sent in parallel within the private message budget instead of one after the other, and the last recipient is
+ * reached in about <code>recipients / budget</code> seconds. Reports how long each fan-out took to complete, and how
+ * many messages were delivered or failed.
+ */
+@Service
+public class DirectMessageService {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectMessageService.class);
+
+    private final DiscordService discordService;
+    private final Timer latency;
+    private final Counter delivered;
+    private final Counter failed;
+
+    @Autowired
+    public DirectMessageService(DiscordService discordService, MetricRegistry metricRegistry) {
+        this.discordService = discordService;
+        this.latency = metricRegistry.timer(MetricNames.DISCORD_FANOUT_LATENCY);
+        this.delivered = metricRegistry.counter(MetricNames.DISCORD_FANOUT_DELIVERED);
+        this.failed = metricRegistry.counter(MetricNames.DISCORD_FANOUT_FAILED);
+    }
+
+    /**
+     * Send a private message to each of the given users.
+     *
+     * @param userIds the recipients, duplicates are only sent once
+     * @param content the message to send
+     * @return a future completed with the number of users the message was delivered to, once every message was either
+     * delivered or failed
+     */
+    public CompletableFuture<Integer> fanOut(Collection<String> userIds, String content) {
+        long start = System.nanoTime();
+        AtomicInteger count = new AtomicInteger();
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            sends.add(send(userId, content).handle((message, t) -> {
+                if (t != null) {
+                    log.warn("Could not send PM to {}: {}", userId, t.toString());
+                    failed.inc();
+                } else {
+                    count.incrementAndGet();
+                    delivered.inc();
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture[sends.size()])).thenApply(v -> {
+            long elapsed = System.nanoTime() - start;
+            latency.update(elapsed, TimeUnit.NANOSECONDS);
+            log.debug("Private message delivered to {} of {} users in {} ms", count.get(), sends.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+            return count.get();
+        });
+    }
+
+    private CompletableFuture<IMessage> send(String userId, String content) {
+        CompletableFuture<IMessage> failure = new CompletableFuture<>();
+        IUser user = discordService.getClient().getUserByID(userId);
+        if (user == null) {
+            failure.completeExceptionally(new IllegalArgumentException("User not found"));
+            return failure;
+        }
+        try {
+            return discordService.sendPrivateMessage(user, content);
+        } catch (Exception e) {
+            failure.completeExceptionally(e);
+            return failure;
+        }
+    }
+}
@@ -3,8 +3,12 @@ package com.ugcleague.ops.service.discord;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.steam.SteamPlayer;
 import com.ugcleague.ops.domain.document.GameServer;
+import com.ugcleague.ops.service.GameServerHistoryService;
 import com.ugcleague.ops.service.GameServerService;
+import com.ugcleague.ops.service.discord.command.Command;
 import com.ugcleague.ops.service.discord.command.CommandBuilder;
+import com.ugcleague.ops.service.discord.command.ReplyWriter;
+import com.ugcleague.ops.service.util.SampleRing;
 import com.ugcleague.ops.service.util.SourceServer;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -17,6 +21,7 @@ import sx.blah.discord.handle.obj.IMessage;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -49,14 +54,17 @@ public class GameServerPresenter {
     private static final Logger log = LoggerFactory.getLogger(GameServerPresenter.class);
     private static final String nonOptDesc = "multiple search by ID (chi1, dal5, mia3), address (68.115.23.245:27015) or" +
         " region groups (chicago, dallas, amsterdam). Also supports GS groups like claimed, unclaimed.";
+    private static final int HISTORY_WIDTH = 24;
     private static final ZonedDateTime EPOCH = ZonedDateTime.ofInstant(Instant.ofEpochMilli(0L), ZoneId.systemDefault());
 
     private final GameServerService gameServerService;
     private final CommandService commandService;
+    private final GameServerHistoryService historyService;
 
     private OptionSpec<Boolean> connectRconSpec;
     private OptionSpec<String> connectNonOptionSpec;
     private OptionSpec<String> statusNonOptionSpec;
+    private OptionSpec<Integer> statusHistorySpec;
     private OptionSpec<String> restartNonOptionSpec;
     private OptionSpec<String> rconNonOptionSpec;
     private OptionSpec<String> rconCommandSpec;
@@ -67,11 +75,14 @@ public class GameServerPresenter {
     private OptionSpec<String> installModNonOptionsSpec;
     private OptionSpec<String> upgradeNonOptionsSpec;
     private OptionSpec<String> consoleNonOptionSpec;
+    private Command rconCommand;
 
     @Autowired
-    public GameServerPresenter(GameServerService gameServerService, CommandService commandService) {
+    public GameServerPresenter(GameServerService gameServerService, CommandService commandService,
+                               GameServerHistoryService historyService) {
         this.gameServerService = gameServerService;
         this.commandService = commandService;
+        this.historyService = historyService;
     }
 
     @PostConstruct
@@ -131,8 +142,10 @@ public class GameServerPresenter {
     }
 
     private void initStatusCommand() {
-        // .status (non-option: search key)
+        // .status [--history [hours]] (non-option: search key)
         OptionParser parser = newParser();
+        statusHistorySpec = parser.accepts("history", "show ping and player history of the last hours instead")
+            .withOptionalArg().ofType(Integer.class).defaultsTo(6);
         statusNonOptionSpec = parser.nonOptions(nonOptDesc).ofType(String.class);
         commandService.register(CommandBuilder.startsWith(".status")
             .description("Display info about a server").support().permissionReplies()
@@ -141,6 +154,9 @@ public class GameServerPresenter {
 
     private String executeStatusCommand(IMessage m, OptionSet o) {
         List<String> nonOptions = o.valuesOf(statusNonOptionSpec);
+        if (!o.has("?") && !nonOptions.isEmpty() && o.has(statusHistorySpec)) {
+            return statusHistory(gameServerService.findServersMultiple(nonOptions), o.valueOf(statusHistorySpec));
+        }
         if (!o.has("?") && !nonOptions.isEmpty()) {
             Set<GameServer> matched = new LinkedHashSet<>();
             List<SourceServer> otherServers = new ArrayList<>();
@@ -158,7 +174,7 @@ public class GameServerPresenter {
             }
             StringBuilder message = new StringBuilder();
             for (GameServer server : matched) {
-                server = gameServerService.refreshServerStatus(server, true);
+                server = gameServerService.refreshServerStatus(server);
                 String srvId = gameServerService.toShortName(server);
                 String version = "v" + server.getVersion();
                 String claim = server.getExpireCheckDate().isEqual(EPOCH) ? "non-claimable" :
@@ -251,6 +267,34 @@ public class GameServerPresenter {
         return s;
     }
 
+    private String statusHistory(List<GameServer> servers, int hours) {
+        if (servers.isEmpty()) {
+            return "No servers meet the criteria";
+        }
+        Instant to = Instant.now();
+        Instant from = to.minus(Duration.ofHours(Math.max(1, hours)));
+        StringBuilder message = new StringBuilder("Status history of the last " + hours + " hours\n```\n");
+        for (GameServer server : servers) {
+            Optional<SampleRing.Samples> history = historyService.getHistory(server, from);
+            if (!history.isPresent() || history.get().size() == 0) {
+                message.append(padRight(server.getShortName(), 5)).append(" no samples yet\n");
+                continue;
+            }
+            SampleRing.Samples samples = history.get();
+            int[] pings = samples.getPings();
+            int[] players = samples.getPlayers();
+            message.append(String.format("%s ping    %s p50 %d p95 %d p99 %d ms, %d/%d failed%n",
+                padRight(server.getShortName(), 5),
+                samples.sparkline(pings, from.toEpochMilli(), to.toEpochMilli(), HISTORY_WIDTH),
+                SampleRing.Samples.percentile(pings, 50), SampleRing.Samples.percentile(pings, 95),
+                SampleRing.Samples.percentile(pings, 99), samples.failures(), samples.size()));
+            message.append(String.format("%s players %s p50 %d max %d%n", padRight("", 5),
+                samples.sparkline(players, from.toEpochMilli(), to.toEpochMilli(), HISTORY_WIDTH),
+                SampleRing.Samples.percentile(players, 50), SampleRing.Samples.percentile(players, 100)));
+        }
+        return message.append("```").toString();
+    }
+
     private String formatExpireDate(ZonedDateTime expireDate) {
         return (expireDate.isBefore(ZonedDateTime.now()) ? "available since " : "claim expires ") +
             formatRelative(expireDate.toInstant());
@@ -404,7 +448,7 @@ public class GameServerPresenter {
         rconPasswordSpec = parser.acceptsAll(asList("p", "password"), "RCON password").withRequiredArg();
         rconQuietSpec = parser.acceptsAll(asList("q", "quiet"), "Don't output the command result to the channel")
             .withOptionalArg().ofType(Boolean.class).defaultsTo(true);
-        commandService.register(CommandBuilder.startsWith(".rcon")
+        rconCommand = commandService.register(CommandBuilder.startsWith(".rcon")
             .description("Send a command to a game server using RCON").support().permissionReplies()
             .parser(parser).queued().command(this::executeRconCommand).build());
     }
@@ -432,44 +476,46 @@ public class GameServerPresenter {
                     }
                 }
             }
-            StringBuilder message = new StringBuilder();
             boolean quiet = o.has(rconQuietSpec) && o.valueOf(rconQuietSpec)
                 || (!o.has(rconQuietSpec) && command.contains("exec"));
-            for (GameServer server : matched) {
-                String password = o.has(rconPasswordSpec) ? o.valueOf(rconPasswordSpec) : server.getRconPassword();
-                try {
-                    message.append("**").append(gameServerService.toShortName(server)).append("** `")
-                        .append(server.getAddress()).append("`\n");
-                    String result = gameServerService.rcon(server, Optional.of(password), command);
-                    appendRconResult(message, command, result, quiet);
-                } catch (TimeoutException e) {
-                    message.append("Server is not responding");
-                } catch (SteamCondenserException e) {
-                    message.append("Error: ").append(e.getMessage());
-                }
-            }
-            for (SourceServer server : otherServers) {
-                if (o.has(rconPasswordSpec)) {
+            // each message is sent once filled, without waiting for the remaining servers to reply
+            try (ReplyWriter message = commandService.replyWriterFrom(m, rconCommand)) {
+                for (GameServer server : matched) {
+                    String password = o.has(rconPasswordSpec) ? o.valueOf(rconPasswordSpec) : server.getRconPassword();
                     try {
-                        String password = o.valueOf(rconPasswordSpec);
-                        message.append("`").append(server.toString()).append("`: ");
-                        String result = gameServerService.rcon(server, password, command);
+                        message.append("**").append(gameServerService.toShortName(server)).append("** `")
+                            .append(server.getAddress()).append("`\n");
+                        String result = gameServerService.rcon(server, Optional.of(password), command);
                         appendRconResult(message, command, result, quiet);
                     } catch (TimeoutException e) {
                         message.append("Server is not responding");
                     } catch (SteamCondenserException e) {
                         message.append("Error: ").append(e.getMessage());
                     }
-                } else {
-                    log.info("Ignoring 'rcon {}' to server {} since no password was given", command, server.toString());
+                }
+                for (SourceServer server : otherServers) {
+                    if (o.has(rconPasswordSpec)) {
+                        try {
+                            String password = o.valueOf(rconPasswordSpec);
+                            message.append("`").append(server.toString()).append("`: ");
+                            String result = gameServerService.rcon(server, password, command);
+                            appendRconResult(message, command, result, quiet);
+                        } catch (TimeoutException e) {
+                            message.append("Server is not responding");
+                        } catch (SteamCondenserException e) {
+                            message.append("Error: ").append(e.getMessage());
+                        }
+                    } else {
+                        log.info("Ignoring 'rcon {}' to server {} since no password was given", command, server.toString());
+                    }
                 }
             }
-            return message.toString();
+            return "";
         }
         return null;
     }
 
-    private void appendRconResult(StringBuilder message, String command, String result, boolean quiet) {
+    private void appendRconResult(ReplyWriter message, String command, String result, boolean quiet) {
         if (quiet) {
             result = "Executed `rcon " + command + "` command\n";
             message.append(result);
@@ -0,0 +1,137 @@
+package com.ugcleague.ops.service.discord;
+
+import com.ugcleague.ops.domain.document.Publisher;
+import com.ugcleague.ops.repository.mongo.PublisherRepository;
+import com.ugcleague.ops.service.DiscordCacheService;
+import com.ugcleague.ops.service.DiscordService;
+import com.ugcleague.ops.service.discord.util.ClassifiedMessage;
+import com.ugcleague.ops.service.discord.util.DiscordSubscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Service;
+import sx.blah.discord.api.events.EventSubscriber;
+import sx.blah.discord.handle.impl.events.MessageReceivedEvent;
+import sx.blah.discord.handle.obj.IMessage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * Single entry point for incoming Discord messages. Each message is classified once, as a command, support channel
+ * traffic, a sound bite trigger or ignorable chatter, and then handed only to the consumers interested in it.
+ * <p>
+ * Support channels are resolved from an in-memory index of publishers, refreshed whenever a publisher is saved or
+ * deleted, so ordinary chat messages don't cause any database query.
+ */
+@Service
+public class MessageClassifier implements DiscordSubscriber {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageClassifier.class);
+
+    private final DiscordService discordService;
+    private final CommandService commandService;
+    private final DiscordCacheService cacheService;
+    private final SupportPresenter supportPresenter;
+    private final SoundBitePresenter soundBitePresenter;
+    private final SettingsService settingsService;
+    private final PublisherRepository publisherRepository;
+
+    private volatile Map<String, List<String>> publishersByChannel = Collections.emptyMap();
+
+    @Autowired
+    public MessageClassifier(DiscordService discordService, CommandService commandService,
+                             DiscordCacheService cacheService, SupportPresenter supportPresenter,
+                             SoundBitePresenter soundBitePresenter, SettingsService settingsService,
+                             PublisherRepository publisherRepository) {
+        this.discordService = discordService;
+        this.commandService = commandService;
+        this.cacheService = cacheService;
+        this.supportPresenter = supportPresenter;
+        this.soundBitePresenter = soundBitePresenter;
+        this.settingsService = settingsService;
+        this.publisherRepository = publisherRepository;
+    }
+
+    @PostConstruct
+    private void configure() {
+        refreshPublishers();
+        discordService.subscribe(this);
+    }
+
+    /**
+     * Rebuild the channel to publisher index from the database.
+     */
+    public void refreshPublishers() {
+        Map<String, List<String>> index = new HashMap<>();
+        for (Publisher publisher : publisherRepository.findAll()) {
+            if (publisher.getChannelId() != null) {
+                index.computeIfAbsent(publisher.getChannelId(), k -> new ArrayList<>()).add(publisher.getId());
+            }
+        }
+        log.debug("Indexed {} support channels", index.size());
+        publishersByChannel = index;
+    }
+
+    @EventListener
+    public void onPublisherSaved(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof Publisher) {
+            refreshPublishers();
+        }
+    }
+
+    @EventListener
+    public void onPublisherDeleted(AfterDeleteEvent<?> event) {
+        if (Publisher.class.equals(event.getType())) {
+            refreshPublishers();
+        }
+    }
+
+    public ClassifiedMessage classify(IMessage message) {
+        String content = message.getContent();
+        List<String> publishers = publishersByChannel.getOrDefault(message.getChannel().getID(),
+            Collections.emptyList());
+        SettingsService.Settings settings = settingsService.getSettings();
+        boolean soundBite = !message.getChannel().isPrivate()
+            && settings.getSoundBitesWhitelist().contains(message.getGuild().getID())
+            && !settings.getSoundBitesBlacklist().contains(message.getChannel().getID());
+        return new ClassifiedMessage(message, commandService.findCommand(content).orElse(null),
+            content.startsWith("."), publishers, soundBite);
+    }
+
+    @EventSubscriber
+    public void onMessageReceived(MessageReceivedEvent event) {
+        IMessage message = event.getMessage();
+        if (discordService.isOwnUser(message.getAuthor())) {
+            return;
+        }
+        ClassifiedMessage classified = classify(message);
+        if (classified.isIgnorable()) {
+            return;
+        }
+        log.trace("Message {} classified as {}", message.getID(), classified);
+        if (classified.getCommand().isPresent()) {
+            dispatch(() -> commandService.onCommandMessage(message, classified.getCommand().get()));
+        }
+        if (classified.isCommandPrefixed()) {
+            dispatch(() -> cacheService.onCommandMessage(message));
+        }
+        if (classified.isSupportTraffic()) {
+            dispatch(() -> supportPresenter.onSupportMessage(message, classified.getPublishers()));
+        }
+        if (classified.isSoundBiteTrigger()) {
+            dispatch(() -> soundBitePresenter.onSoundBiteMessage(message));
+        }
+    }
+
+    private void dispatch(Runnable consumer) {
+        try {
+            consumer.run();
+        } catch (Exception e) {
+            log.warn("Could not handle incoming message", e);
+        }
+    }
+}
@@ -3,7 +3,9 @@ package com.ugcleague.ops.service.discord;
 import com.codahale.metrics.*;
 import com.codahale.metrics.health.HealthCheck;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import com.ugcleague.ops.service.discord.command.Command;
 import com.ugcleague.ops.service.discord.command.CommandBuilder;
+import com.ugcleague.ops.service.discord.command.ReplyWriter;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
@@ -43,6 +45,7 @@ public class MetricsPresenter {
     private Map<String, BiFunction<IMessage, OptionSet, String>> subCommandMap;
     private OptionSpec<String> jvmNonOptionSpec;
     private OptionSpec<String> metricsNonOptionSpec;
+    private Command metricsCommand;
 
     @Autowired
     public MetricsPresenter(CommandService commandService, MetricRegistry metricRegistry,
@@ -64,7 +67,7 @@ public class MetricsPresenter {
         metricsNonOptionSpec = parser.nonOptions("Metric, list of metrics or metric types to display. " +
             "For instance: \"jvm\" would match all metrics starting with that key. If you enter a metric type " +
             "(meter, counter, timer, gauge, histogram) you will get a list of possible metrics of that kind.").ofType(String.class);
-        commandService.register(CommandBuilder.anyMatch(".metrics").master().originReplies().mention().parser(parser)
+        metricsCommand = commandService.register(CommandBuilder.anyMatch(".metrics").master().originReplies().mention().parser(parser)
             .description("Show metrics about the application").command(this::metricsCommand).build());
     }
 
@@ -73,54 +76,56 @@ public class MetricsPresenter {
         if (optionSet.has("?") || nonOptions.isEmpty()) {
             return null;
         }
-        StringBuilder response = new StringBuilder();
-        for (String arg : nonOptions) {
-            switch (arg) {
-                case "meter":
-                    response.append("*List of meters:* ")
-                        .append(metricRegistry.getMeters().keySet().stream().collect(Collectors.joining(", "))).append("\n");
-                    break;
-                case "counter":
-                    response.append("*List of counters:* ")
-                        .append(metricRegistry.getCounters().keySet().stream().collect(Collectors.joining(", "))).append("\n");
-                    break;
-                case "timer":
-                    response.append("*List of timers:* ")
-                        .append(metricRegistry.getTimers().keySet().stream().collect(Collectors.joining(", "))).append("\n");
-                    break;
-                case "gauge":
-                    response.append("*List of gauges:* ")
-                        .append(metricRegistry.getGauges().keySet().stream().collect(Collectors.joining(", "))).append("\n");
-                    break;
-                case "histogram":
-                    response.append("*List of histograms:* ")
-                        .append(metricRegistry.getHistograms().keySet().stream().collect(Collectors.joining(", "))).append("\n");
-                    break;
-                default:
-                    metricRegistry.getMeters().entrySet().stream()
-                        .filter(e -> e.getKey().startsWith(arg))
-                        .map(e -> String.format("[m] **%s** %s\n", e.getKey(), formatMeter(e.getValue())))
-                        .forEach(response::append);
-                    metricRegistry.getCounters().entrySet().stream()
-                        .filter(e -> e.getKey().startsWith(arg))
-                        .map(e -> String.format("[c] **%s** %s\n", e.getKey(), formatCounter(e.getValue())))
-                        .forEach(response::append);
-                    metricRegistry.getTimers().entrySet().stream()
-                        .filter(e -> e.getKey().startsWith(arg))
-                        .map(e -> String.format("[t] **%s** %s\n", e.getKey(), formatTimer(e.getValue())))
-                        .forEach(response::append);
-                    metricRegistry.getGauges().entrySet().stream()
-                        .filter(e -> e.getKey().startsWith(arg))
-                        .map(e -> String.format("[g] **%s** %s\n", e.getKey(), formatGauge(e.getValue())))
-                        .forEach(response::append);
-                    metricRegistry.getHistograms().entrySet().stream()
-                        .filter(e -> e.getKey().startsWith(arg))
-                        .map(e -> String.format("[h] **%s** %s\n", e.getKey(), formatHistogram(e.getValue())))
-                        .forEach(response::append);
-                    break;
+        // every matching metric is listed, which can take many messages
+        try (ReplyWriter response = commandService.replyWriterFrom(message, metricsCommand)) {
+            for (String arg : nonOptions) {
+                switch (arg) {
+                    case "meter":
+                        response.append("*List of meters:* ")
+                            .append(metricRegistry.getMeters().keySet().stream().collect(Collectors.joining(", "))).append("\n");
+                        break;
+                    case "counter":
+                        response.append("*List of counters:* ")
+                            .append(metricRegistry.getCounters().keySet().stream().collect(Collectors.joining(", "))).append("\n");
+                        break;
+                    case "timer":
+                        response.append("*List of timers:* ")
+                            .append(metricRegistry.getTimers().keySet().stream().collect(Collectors.joining(", "))).append("\n");
+                        break;
+                    case "gauge":
+                        response.append("*List of gauges:* ")
+                            .append(metricRegistry.getGauges().keySet().stream().collect(Collectors.joining(", "))).append("\n");
+                        break;
+                    case "histogram":
+                        response.append("*List of histograms:* ")
+                            .append(metricRegistry.getHistograms().keySet().stream().collect(Collectors.joining(", "))).append("\n");
+                        break;
+                    default:
+                        metricRegistry.getMeters().entrySet().stream()
+                            .filter(e -> e.getKey().startsWith(arg))
+                            .map(e -> String.format("[m] **%s** %s\n", e.getKey(), formatMeter(e.getValue())))
+                            .forEach(response::append);
+                        metricRegistry.getCounters().entrySet().stream()
+                            .filter(e -> e.getKey().startsWith(arg))
+                            .map(e -> String.format("[c] **%s** %s\n", e.getKey(), formatCounter(e.getValue())))
+                            .forEach(response::append);
+                        metricRegistry.getTimers().entrySet().stream()
+                            .filter(e -> e.getKey().startsWith(arg))
+                            .map(e -> String.format("[t] **%s** %s\n", e.getKey(), formatTimer(e.getValue())))
+                            .forEach(response::append);
+                        metricRegistry.getGauges().entrySet().stream()
+                            .filter(e -> e.getKey().startsWith(arg))
+                            .map(e -> String.format("[g] **%s** %s\n", e.getKey(), formatGauge(e.getValue())))
+                            .forEach(response::append);
+                        metricRegistry.getHistograms().entrySet().stream()
+                            .filter(e -> e.getKey().startsWith(arg))
+                            .map(e -> String.format("[h] **%s** %s\n", e.getKey(), formatHistogram(e.getValue())))
+                            .forEach(response::append);
+                        break;
+                }
             }
         }
-        return response.toString();
+        return "";
     }
 
     private String formatMeter(Meter meter) {
@@ -134,8 +139,9 @@ public class MetricsPresenter {
 
     private String formatTimer(Timer timer) {
         Snapshot snapshot = timer.getSnapshot();
-        return String.format("snapshots: `%s` min: `%s` avg: `%s` max: `%s` stdDev: `%s` -- count: `%s` mean: `%s` events/min: `%s`",
+        return String.format("snapshots: `%s` min: `%s` avg: `%s` max: `%s` stdDev: `%s` p50: `%s` p95: `%s` p99: `%s` -- count: `%s` mean: `%s` events/min: `%s`",
             snapshot.size(), snapshot.getMin(), snapshot.getMean(), snapshot.getMax(), snapshot.getStdDev(),
+            snapshot.getMedian(), snapshot.get95thPercentile(), snapshot.get99thPercentile(),
             timer.getCount(), timer.getMeanRate(), timer.getOneMinuteRate());
     }
 
@@ -145,8 +151,9 @@ public class MetricsPresenter {
 
     private String formatHistogram(Histogram histogram) {
         Snapshot snapshot = histogram.getSnapshot();
-        return String.format("snapshots: `%s` min: `%s` avg: `%s` max: `%s` stdDev: `%s` -- count: `%s`",
+        return String.format("snapshots: `%s` min: `%s` avg: `%s` max: `%s` stdDev: `%s` p50: `%s` p95: `%s` p99: `%s` -- count: `%s`",
             snapshot.size(), snapshot.getMin(), snapshot.getMean(), snapshot.getMax(), snapshot.getStdDev(),
+            snapshot.getMedian(), snapshot.get95thPercentile(), snapshot.get99thPercentile(),
             histogram.getCount());
     }
 
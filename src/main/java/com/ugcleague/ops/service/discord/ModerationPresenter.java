@@ -14,10 +14,7 @@ import org.springframework.stereotype.Service;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IMessage;
 import sx.blah.discord.handle.obj.IUser;
-import sx.blah.discord.util.DiscordException;
 import sx.blah.discord.util.MessageList;
-import sx.blah.discord.util.MissingPermissionsException;
-import sx.blah.discord.util.RequestBuffer;
 
 import javax.annotation.PostConstruct;
 import java.time.ZoneId;
@@ -30,8 +27,6 @@ import java.util.stream.Collectors;
 
 import static com.ugcleague.ops.service.discord.CommandService.newAliasesMap;
 import static com.ugcleague.ops.service.discord.CommandService.newParser;
-import static com.ugcleague.ops.service.discord.util.DiscordLimiter.acquireDelete;
-import static com.ugcleague.ops.service.discord.util.DiscordUtil.deleteInBatch;
 import static java.util.Arrays.asList;
 
 @Service
@@ -169,19 +164,8 @@ public class ModerationPresenter {
                 break;
             }
         }
-        // bulk delete requires at least 2 messages
-        if (toDelete.size() == 1) {
-            RequestBuffer.request(() -> {
-                try {
-                    acquireDelete();
-                    toDelete.get(0).delete();
-                } catch (MissingPermissionsException | DiscordException e) {
-                    log.warn("Could not delete message", e);
-                }
-            });
-        } else {
-            deleteInBatch(channel, toDelete);
-        }
+        // recent messages are deleted in bulk, the rest one by one
+        discordService.deleteMessages(channel, toDelete);
         messages.setCacheCapacity(capacity);
         return (toDelete.size() == 0 ? "No messages were deleted" : "Deleting " + toDelete.size() + " message" + (toDelete.size() == 1 ? "" : "s"));
     }
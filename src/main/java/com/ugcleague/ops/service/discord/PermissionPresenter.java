@@ -270,7 +270,7 @@ public class PermissionPresenter {
         changePermission(op, permission, u);
         u = cacheService.saveUser(u);
         log.info("Saving new user permission settings: {}", u);
-        permissionService.evict();
+        permissionService.evict(user);
         return String.format("Modified user %s: %s permission %s", u.getName(), op.name().toLowerCase(), permission.getName());
     }
 
@@ -279,7 +279,7 @@ public class PermissionPresenter {
         changePermission(op, permission, g);
         g = cacheService.saveGuild(g);
         log.info("Saving new guild permission settings: {}", g);
-        permissionService.evict();
+        permissionService.evict(guild);
         return String.format("Modified server %s: %s permission %s", g.getName(), op.name().toLowerCase(), permission.getName());
     }
 
@@ -303,7 +303,7 @@ public class PermissionPresenter {
         changePermission(op, permission, edit);
         g = cacheService.saveGuild(g);
         log.info("Saving new guild/role permission settings: {}", g);
-        permissionService.evict();
+        permissionService.evict(parent);
         return String.format("Modified role %s: %s permission %s", edit.getName(), op.name().toLowerCase(), permission.getName());
     }
 
@@ -320,7 +320,7 @@ public class PermissionPresenter {
         ch = cacheService.saveChannel(ch);
         cacheService.saveGuild(g);
         log.info("Saving new permission data: {}", g);
-        permissionService.evict();
+        permissionService.evict(channel);
         return String.format("Modified channel %s: %s permission %s", ch.getName(), op.name().toLowerCase(), permission.getName());
     }
 
@@ -3,7 +3,9 @@ package com.ugcleague.ops.service.discord;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.steam.community.SteamId;
 import com.ugcleague.ops.service.UgcDataService;
+import com.ugcleague.ops.service.discord.command.Command;
 import com.ugcleague.ops.service.discord.command.CommandBuilder;
+import com.ugcleague.ops.service.discord.command.ReplyWriter;
 import com.ugcleague.ops.service.discord.util.RosterData;
 import com.ugcleague.ops.web.rest.UgcPlayerPage;
 import joptsimple.OptionSet;
@@ -40,6 +42,8 @@ public class RosterPresenter {
     private final CommandService commandService;
     private final UgcDataService ugcDataService;
 
+    private Command checkCommand;
+
     @Autowired
     public RosterPresenter(CommandService commandService, UgcDataService ugcDataService) {
         this.commandService = commandService;
@@ -48,7 +52,7 @@ public class RosterPresenter {
 
     @PostConstruct
     private void configure() {
-        commandService.register(CommandBuilder.startsWith(".check")
+        checkCommand = commandService.register(CommandBuilder.startsWith(".check")
             .description("Check UGC rosters from a status command output").unrestricted().originReplies()
             .queued().noParser().command(this::checkRosters).build());
         formatConverter.put("TF2 Highlander", "9v9");
@@ -61,7 +65,6 @@ public class RosterPresenter {
         Matcher statusMatcher = STATUS.matcher(data);
         Matcher logMatcher = LOGLINE.matcher(data);
         Matcher standaloneMatcher = STANDALONE.matcher(data);
-        StringBuilder builder = new StringBuilder("```asciidoc\n");
         Set<RosterData> players = new LinkedHashSet<>();
         while (statusMatcher.find()) {
             RosterData player = new RosterData();
@@ -130,57 +133,63 @@ public class RosterPresenter {
             .flatMap(d -> d.getUgcData().getTeam().stream())
             .map(t -> t.getDivision().length()).reduce(0, Integer::max) + 2;
         int formatWidth = "9v9".length() + 2;
-        builder.append(rightPad("Steam3ID", idWidth)).append(rightPad("Name", nameWidth))
-            .append(rightPad("Team", teamWidth)).append(rightPad("Division", divWidth))
-            .append(rightPad("Mode", formatWidth)).append("\n")
-            .append(repeat('-', idWidth + nameWidth + teamWidth + divWidth + formatWidth)).append("\n");
         StringBuilder recentJoinsBuilder = new StringBuilder();
         Set<Integer> teamIds = new LinkedHashSet<>();
-        for (RosterData player : result) {
-            if (Thread.interrupted()) {
-                log.warn("Roster check interrupted");
-                return "";
-            }
-            if (player.getUgcData() == null || player.getUgcData().getTeam() == null || player.getUgcData().getTeam().isEmpty()) {
-                builder.append(rightPad(player.getModernId(), idWidth))
-                    .append(rightPad(substring(player.getServerName(), 0, NAME_MAX_WIDTH), nameWidth)).append("\n");
-            } else {
-                boolean first = true;
-                for (UgcPlayerPage.Team team : player.getUgcData().getTeam()) {
-                    // convert if legacy format
-                    if (team.getClanId() > 0) {
-                        // format needs conversion
-                        team.setFormat(formatConverter.getOrDefault(team.getFormat(), team.getFormat()));
-                        teamIds.add(team.getClanId());
-                    } else {
-                        team.setJoined(player.getUgcData().getJoined());
-                    }
-                    if (filter.isEmpty() || team.getFormat().equals(filter)) {
-                        builder.append(rightPad(first ? player.getModernId() : "", idWidth))
-                            .append(rightPad(first ? substring(player.getServerName(), 0, NAME_MAX_WIDTH) : "", nameWidth))
-                            .append(rightPad(substring((team.getClanId() > 0 ? team.getClanId() + " " : "") +
-                                team.getName(), 0, TEAM_MAX_WIDTH), teamWidth))
-                            .append(rightPad(team.getDivision(), divWidth))
-                            .append(rightPad(team.getFormat().equals("9v9") ? "HL" : team.getFormat(), formatWidth))
-                            .append("\n");
-                        first = false;
-                        if (isRecentJoin(team)) {
-                            recentJoinsBuilder.append("\n*Warning* ")
-                                .append(player.getServerName())
-                                .append(" joined ").append(team.getName())
-                                .append(" less than 18 hours ago!");
+        // large rosters can take many messages, each one is sent once filled
+        try (ReplyWriter response = commandService.replyWriterFrom(message, checkCommand)) {
+            response.append("```asciidoc\n");
+            response.append(rightPad("Steam3ID", idWidth)).append(rightPad("Name", nameWidth))
+                .append(rightPad("Team", teamWidth)).append(rightPad("Division", divWidth))
+                .append(rightPad("Mode", formatWidth)).append("\n")
+                .append(repeat('-', idWidth + nameWidth + teamWidth + divWidth + formatWidth)).append("\n");
+            for (RosterData player : result) {
+                if (Thread.interrupted()) {
+                    // what was already written is still sent, with its code block closed
+                    log.warn("Roster check interrupted");
+                    return "";
+                }
+                if (player.getUgcData() == null || player.getUgcData().getTeam() == null || player.getUgcData().getTeam().isEmpty()) {
+                    response.append(rightPad(player.getModernId(), idWidth))
+                        .append(rightPad(substring(player.getServerName(), 0, NAME_MAX_WIDTH), nameWidth)).append("\n");
+                } else {
+                    boolean first = true;
+                    for (UgcPlayerPage.Team team : player.getUgcData().getTeam()) {
+                        // convert if legacy format
+                        if (team.getClanId() > 0) {
+                            // format needs conversion
+                            team.setFormat(formatConverter.getOrDefault(team.getFormat(), team.getFormat()));
+                            teamIds.add(team.getClanId());
+                        } else {
+                            team.setJoined(player.getUgcData().getJoined());
+                        }
+                        if (filter.isEmpty() || team.getFormat().equals(filter)) {
+                            response.append(rightPad(first ? player.getModernId() : "", idWidth))
+                                .append(rightPad(first ? substring(player.getServerName(), 0, NAME_MAX_WIDTH) : "", nameWidth))
+                                .append(rightPad(substring((team.getClanId() > 0 ? team.getClanId() + " " : "") +
+                                    team.getName(), 0, TEAM_MAX_WIDTH), teamWidth))
+                                .append(rightPad(team.getDivision(), divWidth))
+                                .append(rightPad(team.getFormat().equals("9v9") ? "HL" : team.getFormat(), formatWidth))
+                                .append("\n");
+                            first = false;
+                            if (isRecentJoin(team)) {
+                                recentJoinsBuilder.append("\n*Warning* ")
+                                    .append(player.getServerName())
+                                    .append(" joined ").append(team.getName())
+                                    .append(" less than 18 hours ago!");
+                            }
                         }
                     }
                 }
             }
-        }
-        if (teamIds.size() > 0) {
-            recentJoinsBuilder.append("\nTeams appearing in the check:\n");
-            for (Integer id : teamIds) {
-                recentJoinsBuilder.append("<http://www.ugcleague.com/team_page.cfm?clan_id=").append(id).append(">\n");
+            if (teamIds.size() > 0) {
+                recentJoinsBuilder.append("\nTeams appearing in the check:\n");
+                for (Integer id : teamIds) {
+                    recentJoinsBuilder.append("<http://www.ugcleague.com/team_page.cfm?clan_id=").append(id).append(">\n");
+                }
             }
+            response.append("```").append(recentJoinsBuilder);
         }
-        return builder.append("```").append(recentJoinsBuilder.toString()).toString();
+        return "";
     }
 
     private boolean needsFetching(SteamId id) {
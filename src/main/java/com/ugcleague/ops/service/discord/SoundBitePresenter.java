@@ -16,7 +16,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import sx.blah.discord.api.events.EventSubscriber;
-import sx.blah.discord.handle.impl.events.MessageReceivedEvent;
 import sx.blah.discord.handle.impl.events.MessageSendEvent;
 import sx.blah.discord.handle.impl.events.VoiceUserSpeakingEvent;
 import sx.blah.discord.handle.obj.IMessage;
@@ -494,9 +493,14 @@ public class SoundBitePresenter implements DiscordSubscriber {
         }
     }
 
-    @EventSubscriber
-    public void onMessage(MessageReceivedEvent e) {
-        CompletableFuture.runAsync(() -> asyncOnMessage(e.getMessage()), taskExecutor);
+    /**
+     * Look for sound bite triggers in a message sent to a channel where they are enabled.
+     *
+     * @param message the incoming message
+     * @see MessageClassifier
+     */
+    public void onSoundBiteMessage(IMessage message) {
+        CompletableFuture.runAsync(() -> asyncOnMessage(message), taskExecutor);
     }
 
     public void asyncOnMessage(IMessage message) {
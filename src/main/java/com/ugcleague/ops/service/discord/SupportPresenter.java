@@ -9,7 +9,6 @@ import com.ugcleague.ops.service.DiscordCacheService;
 import com.ugcleague.ops.service.DiscordService;
 import com.ugcleague.ops.service.PermissionService;
 import com.ugcleague.ops.service.discord.command.CommandBuilder;
-import com.ugcleague.ops.service.discord.util.DiscordSubscriber;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
@@ -19,8 +18,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import sx.blah.discord.api.events.EventSubscriber;
-import sx.blah.discord.handle.impl.events.MessageReceivedEvent;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IMessage;
 import sx.blah.discord.handle.obj.IUser;
@@ -51,12 +48,13 @@ import static java.util.Arrays.asList;
  */
 @Service
 @Transactional
-public class SupportPresenter implements DiscordSubscriber {
+public class SupportPresenter {
 
     private static final Logger log = LoggerFactory.getLogger(SupportPresenter.class);
 
     private final DiscordService discordService;
     private final CommandService commandService;
+    private final DirectMessageService directMessageService;
     private final PermissionService permissionService;
     private final DiscordCacheService cacheService;
     private final PublisherRepository publisherRepository;
@@ -75,9 +73,10 @@ public class SupportPresenter implements DiscordSubscriber {
     @Autowired
     public SupportPresenter(DiscordService discordService, CommandService commandService,
                             PermissionService permissionService, DiscordCacheService cacheService,
-                            PublisherRepository publisherRepository) {
+                            PublisherRepository publisherRepository, DirectMessageService directMessageService) {
         this.discordService = discordService;
         this.commandService = commandService;
+        this.directMessageService = directMessageService;
         this.permissionService = permissionService;
         this.cacheService = cacheService;
         this.publisherRepository = publisherRepository;
@@ -85,8 +84,6 @@ public class SupportPresenter implements DiscordSubscriber {
 
     @PostConstruct
     private void configure() {
-        discordService.subscribe(this);
-
         initSubCommand();
         initUnsubCommand();
         initManageCommand();
@@ -412,15 +409,18 @@ public class SupportPresenter implements DiscordSubscriber {
 
     //// Publishing
 
-    @EventSubscriber
-    public void onMessageReceived(MessageReceivedEvent event) {
-        IMessage m = event.getMessage();
-        if (!discordService.isOwnUser(m.getAuthor())) {
-            for (Publisher publisher : publisherRepository.findByChannelId(event.getMessage().getChannel().getID())) {
-                // check if this user can trigger the publish event in this channel
-                if (permissionService.canPerform("support.publish", m.getAuthor(), m.getChannel())) {
-                    publishSupportEvent(m, publisher.getId());
-                }
+    /**
+     * Notify the subscribers of the given publishers about a message sent to their support channel.
+     *
+     * @param m          the incoming message
+     * @param publishers the publishers bound to the channel of the message
+     * @see MessageClassifier
+     */
+    public void onSupportMessage(IMessage m, List<String> publishers) {
+        for (String publisher : publishers) {
+            // check if this user can trigger the publish event in this channel
+            if (permissionService.canPerform("support.publish", m.getAuthor(), m.getChannel())) {
+                publishSupportEvent(m, publisher);
             }
         }
     }
@@ -434,19 +434,11 @@ public class SupportPresenter implements DiscordSubscriber {
             // ping subscribers at most once per hour per user
             Optional<Publisher> publisher = getPublisher(publisherName);
             if (publisher.isPresent()) {
-                List<UserSubscription> subs = publisher.get().getUserSubscriptions().stream()
-                    .filter(this::isActive).collect(Collectors.toList());
-                Set<DiscordUser> pinged = new HashSet<>();
-                for (UserSubscription sub : subs) {
-                    if (!pinged.contains(sub.getUser())) {
-                        try {
-                            discordService.sendPrivateMessage(sub.getUser().getId(), buildPingMessage(m));
-                        } catch (Exception e) {
-                            log.warn("Could not send PM to subscriber: {}", e.toString());
-                        }
-                        pinged.add(sub.getUser());
-                    }
-                }
+                // each subscriber is pinged once, all of them in parallel
+                Set<String> userIds = publisher.get().getUserSubscriptions().stream()
+                    .filter(this::isActive).map(sub -> sub.getUser().getId())
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+                directMessageService.fanOut(userIds, buildPingMessage(m));
             } else {
                 log.warn("Could not publish support event, publisher does not exist: {}", publisherName);
             }
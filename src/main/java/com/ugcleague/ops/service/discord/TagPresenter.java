@@ -347,7 +347,7 @@ public class TagPresenter {
             if (!tag.isPresent()) {
                 return "No tag exists with this name";
             }
-            if (key.startsWith(".") || commandService.getCommandList().stream().anyMatch(c -> c.matches(key))) {
+            if (key.startsWith(".") || commandService.findCommand(key).isPresent()) {
                 return "This tag can't be used as reply trigger";
             }
             if (tag.get().isDirect()) {
@@ -0,0 +1,95 @@
+package com.ugcleague.ops.service.discord.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits command arguments in a single pass. Tokens are separated by spaces or tabs, and can be grouped with either
+ * double or single quotes. A quote without its closing pair is ignored.
+ */
+public class ArgumentTokenizer {
+
+    /**
+     * Split the given arguments into tokens.
+     *
+     * @param args    the arguments to split
+     * @param limit   if positive, the maximum number of tokens: the last one captures the rest of the arguments as-is
+     * @param unquote whether to remove the quote characters from the tokens
+     * @param aliases replacements for whole tokens, can be <code>null</code>
+     * @return the resulting tokens
+     */
+    public static String[] split(String args, int limit, boolean unquote, Map<String, String> aliases) {
+        List<String> tokens = new ArrayList<>();
+        int length = args.length();
+        int i = 0;
+        while (i < length) {
+            char c = args.charAt(i);
+            if (c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            int end;
+            if (c == '"' || c == '\'') {
+                int close = args.indexOf(c, i + 1);
+                if (close < 0) {
+                    // unbalanced quote, skip it
+                    i++;
+                    continue;
+                }
+                end = close + 1;
+            } else {
+                end = i + 1;
+                while (end < length && !isBoundary(args.charAt(end))) {
+                    end++;
+                }
+            }
+            if (limit > 0 && tokens.size() + 1 == limit) {
+                tokens.add(alias(args.substring(i), aliases));
+                break;
+            }
+            String token = args.substring(i, end);
+            tokens.add(alias(unquote ? stripQuotes(token) : token, aliases));
+            i = end;
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static boolean isBoundary(char c) {
+        return c == ' ' || c == '\t' || c == '"' || c == '\'';
+    }
+
+    private static String stripQuotes(String token) {
+        int first = firstQuote(token);
+        if (first < 0) {
+            return token;
+        }
+        StringBuilder builder = new StringBuilder(token.length());
+        builder.append(token, 0, first);
+        for (int i = first + 1; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c != '"' && c != '\'') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int firstQuote(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '"' || c == '\'') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String alias(String token, Map<String, String> aliases) {
+        return aliases == null ? token : aliases.getOrDefault(token, token);
+    }
+
+    private ArgumentTokenizer() {
+
+    }
+}
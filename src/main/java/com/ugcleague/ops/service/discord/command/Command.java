@@ -5,19 +5,12 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import sx.blah.discord.handle.obj.IMessage;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiFunction;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class Command implements Comparable<Command> {
 
-    private static final Pattern PATTERN = Pattern.compile("[^ \\t\"']+|\"([^\"]*)\"|'([^']*)'");
-
     private MatchType matchType;
     private String key;
     private String description;
@@ -174,33 +167,19 @@ public class Command implements Comparable<Command> {
     }
 
     public String execute(IMessage message, String args) throws OptionException {
+        return apply(message, parse(args));
+    }
+
+    public OptionSet parse(String args) throws OptionException {
         if (parser == null || parser.recognizedOptions().isEmpty()) {
-            return command.apply(message, null);
+            return null;
         } else {
-            return command.apply(message, args != null ? parser.parse(split(args, limit)) : parser.parse());
+            return args != null ? parser.parse(ArgumentTokenizer.split(args, limit, unquote, optionAliases)) : parser.parse();
         }
     }
 
-    private String[] split(String args, int limit) {
-        Matcher matcher = PATTERN.matcher(args);
-        List<String> matches = new ArrayList<>();
-        int count = 1;
-        while (matcher.find()) {
-            if (limit > 0 && ++count > limit) {
-                String group = args.substring(matcher.start());
-                matches.add(group);
-                break;
-            } else {
-                String group = matcher.group();
-                matches.add(unquote ? group.replaceAll("\"|'", "") : group);
-            }
-        }
-        if (optionAliases != null && !optionAliases.isEmpty()) {
-            return matches.stream().map(s -> optionAliases.getOrDefault(s, s))
-                .collect(Collectors.toList()).toArray(new String[matches.size()]);
-        } else {
-            return matches.toArray(new String[matches.size()]);
-        }
+    public String apply(IMessage message, OptionSet options) {
+        return command.apply(message, options);
     }
 
     @Override
@@ -0,0 +1,159 @@
+package com.ugcleague.ops.service.discord.command;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ugcleague.ops.service.util.MetricNames;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and outcome metrics of each command. An invocation is timed through every phase, from the moment its message
+ * arrives until the reply is sent, and its outcome is counted once it's over. Timers and meters are registered in the
+ * given registry the first time a command is invoked, so reporters pick up the percentiles of each command key, and
+ * removed once the command is unregistered.
+ */
+public class CommandMetrics {
+
+    private final MetricRegistry metricRegistry;
+    private final Map<String, KeyMetrics> byKey = new ConcurrentHashMap<>();
+
+    public CommandMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Start timing an invocation of a command.
+     *
+     * @param command the invoked command
+     * @return the invocation, to record the end of each phase and the outcome
+     */
+    public Invocation start(Command command) {
+        return new Invocation(byKey.computeIfAbsent(command.getKey(), KeyMetrics::new));
+    }
+
+    /**
+     * Remove the metrics of a command from the registry, so commands created at runtime like tags don't leave their
+     * metrics behind once they are deleted.
+     *
+     * @param command the unregistered command
+     */
+    public void remove(Command command) {
+        KeyMetrics metrics = byKey.remove(command.getKey());
+        if (metrics != null) {
+            metrics.names.forEach(metricRegistry::remove);
+        }
+    }
+
+    public enum Phase {
+        /**
+         * Waiting for a thread in the command lane.
+         */
+        WAIT,
+        /**
+         * Deciding if the user can run the command.
+         */
+        PERMISSION,
+        /**
+         * Splitting and parsing the arguments.
+         */
+        PARSE,
+        /**
+         * Running the command itself.
+         */
+        EXECUTE,
+        /**
+         * Sending the reply to the user.
+         */
+        REPLY,
+        /**
+         * The whole invocation.
+         */
+        TOTAL;
+
+        public String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum Outcome {
+        SUCCESS, HELP, OPTION_ERROR, DENIED, TIMEOUT, CANCELLED, FAILURE;
+
+        public String key() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    /**
+     * Timing of a single invocation. Each phase is measured from the end of the previous one, so phases must be
+     * recorded in the order they happen.
+     */
+    public static class Invocation {
+
+        private final KeyMetrics metrics;
+        private final long started = System.nanoTime();
+        private long last = started;
+        private boolean finished = false;
+
+        private Invocation(KeyMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * Record the end of a phase.
+         *
+         * @param phase the phase that just ended
+         */
+        public synchronized void lap(Phase phase) {
+            long now = System.nanoTime();
+            metrics.timers.get(phase).update(now - last, TimeUnit.NANOSECONDS);
+            last = now;
+        }
+
+        /**
+         * Start the next phase now, without recording the time spent since the end of the previous one.
+         */
+        public synchronized void skip() {
+            last = System.nanoTime();
+        }
+
+        /**
+         * Record the outcome and the total time of the invocation. Only the first call has any effect.
+         *
+         * @param outcome how the invocation ended
+         */
+        public synchronized void finish(Outcome outcome) {
+            if (!finished) {
+                finished = true;
+                metrics.meters.get(outcome).mark();
+                metrics.timers.get(Phase.TOTAL).update(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private class KeyMetrics {
+
+        private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+        private final Map<Outcome, Meter> meters = new EnumMap<>(Outcome.class);
+        private final List<String> names = new ArrayList<>();
+
+        private KeyMetrics(String key) {
+            String name = MetricNames.commandKey(key);
+            for (Phase phase : Phase.values()) {
+                String timerName = MetricNames.commandLatency(name, phase.key());
+                timers.put(phase, metricRegistry.timer(timerName));
+                names.add(timerName);
+            }
+            for (Outcome outcome : Outcome.values()) {
+                String meterName = MetricNames.commandOutcome(name, outcome.key());
+                meters.put(outcome, metricRegistry.meter(meterName));
+                names.add(meterName);
+            }
+        }
+    }
+}
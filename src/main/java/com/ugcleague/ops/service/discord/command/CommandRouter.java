@@ -0,0 +1,63 @@
+package com.ugcleague.ops.service.discord.command;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable index of commands, organized as a trie over the space-separated tokens of each command key. Finding the
+ * command for a message only walks as many tokens as the deepest key has, regardless of how many commands are
+ * registered. When more than one command matches, the one with the longest key wins, so <code>.announce start</code>
+ * takes precedence over <code>.announce</code>.
+ * <p>
+ * Instances are never modified after creation: to register or remove commands, build a new router and replace the
+ * old one.
+ */
+public class CommandRouter {
+
+    private final Node root = new Node();
+
+    public CommandRouter(Collection<Command> commands) {
+        for (Command command : commands) {
+            Node node = root;
+            for (String token : command.getKey().split(" ", -1)) {
+                node = node.children.computeIfAbsent(token, k -> new Node());
+            }
+            node.command = command;
+        }
+    }
+
+    /**
+     * Find the command that should handle the given message.
+     *
+     * @param message the message content
+     * @return the command with the longest key that matches the message according to its {@link MatchType}, or empty
+     * if no command matches
+     */
+    public Optional<Command> route(String message) {
+        Command match = null;
+        Node node = root;
+        int start = 0;
+        while (start <= message.length()) {
+            int end = message.indexOf(' ', start);
+            if (end < 0) {
+                end = message.length();
+            }
+            node = node.children.get(message.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.command != null && node.command.matches(message)) {
+                match = node.command;
+            }
+            start = end + 1;
+        }
+        return Optional.ofNullable(match);
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private Command command;
+    }
+}
@@ -0,0 +1,332 @@
+package com.ugcleague.ops.service.discord.command;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs command invocations in separate lanes, each one with its own threads, so a burst of slow commands can't delay
+ * the cheap interactive ones. Within a lane, each user can only have a limited number of invocations running at the
+ * same time: the rest wait in a per-user queue and don't take a thread until one of the user's running invocations
+ * finishes.
+ * <p>
+ * Invocations can have a deadline, enforced by a watchdog that completes them with a {@link TimeoutException} and
+ * interrupts their thread. Invocations can also be cancelled while waiting or running. In both cases the user slot is
+ * released at once, and if the thread is still busy because the command ignores interruption, the lane gets an extra
+ * thread until it returns, so stuck commands can't exhaust the lane.
+ * <p>
+ * Every lane reports its queue depth, the time invocations waited before starting, and how many of them timed out or
+ * were cancelled.
+ */
+public class CommandScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandScheduler.class);
+
+    private final Map<Lane, LaneExecutor> lanes = new EnumMap<>(Lane.class);
+    private final int userConcurrency;
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param interactiveThreads number of threads of the interactive lane
+     * @param longRunningThreads number of threads of the long-running lane
+     * @param userConcurrency    maximum invocations of a single user running at the same time in each lane
+     * @param metricRegistry     registry for the lane metrics
+     */
+    public CommandScheduler(int interactiveThreads, int longRunningThreads, int userConcurrency,
+                            MetricRegistry metricRegistry) {
+        this.userConcurrency = Math.max(1, userConcurrency);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(newThreadFactory("command-watchdog-"));
+        lanes.put(Lane.INTERACTIVE, new LaneExecutor(Lane.INTERACTIVE, interactiveThreads, metricRegistry));
+        lanes.put(Lane.LONG_RUNNING, new LaneExecutor(Lane.LONG_RUNNING, longRunningThreads, metricRegistry));
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Find the lane a command should run in. Queued commands are the ones expected to take a long time.
+     *
+     * @param command the command to run
+     * @return the lane for the command
+     */
+    public static Lane laneOf(Command command) {
+        return command.isQueued() ? Lane.LONG_RUNNING : Lane.INTERACTIVE;
+    }
+
+    /**
+     * Schedule an invocation without a deadline.
+     *
+     * @param lane   the lane to run in
+     * @param userId the user who requested the invocation
+     * @param task   the work to perform
+     * @param <T>    the type of the result
+     * @return a future completed with the result of the task, exceptionally if the task failed or was cancelled
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, String userId, Supplier<T> task) {
+        return submit(lane, userId, task, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule an invocation with a deadline.
+     *
+     * @param lane    the lane to run in
+     * @param userId  the user who requested the invocation
+     * @param task    the work to perform, it should react to interruption
+     * @param timeout maximum running time once started, or zero for no deadline
+     * @param unit    the unit of the timeout
+     * @param <T>     the type of the result
+     * @return a future completed with the result of the task, exceptionally if the task failed, timed out or was
+     * cancelled
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, String userId, Supplier<T> task, long timeout, TimeUnit unit) {
+        return lanes.get(lane).submit(userId, task, unit.toNanos(timeout));
+    }
+
+    /**
+     * Cancel every invocation of a user in a lane, whether waiting or running.
+     *
+     * @param lane   the lane to search
+     * @param userId the user whose invocations will be cancelled
+     * @return the number of invocations cancelled
+     */
+    public int cancel(Lane lane, String userId) {
+        return lanes.get(lane).cancel(userId);
+    }
+
+    public int getQueueDepth(Lane lane) {
+        return lanes.get(lane).depth();
+    }
+
+    public void shutdown() {
+        watchdog.shutdownNow();
+        lanes.values().forEach(l -> l.workers.shutdownNow());
+    }
+
+    public enum Lane {
+        INTERACTIVE, LONG_RUNNING;
+
+        public String key() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private class LaneExecutor {
+
+        private final Lane lane;
+        private final int threads;
+        private final ThreadPoolExecutor workers;
+        private final Timer waitTimer;
+        private final Counter timeouts;
+        private final Counter cancellations;
+        private final Map<String, UserSlot> users = new HashMap<>();
+        private int waiting = 0;
+        private int abandoned = 0;
+
+        private LaneExecutor(Lane lane, int threads, MetricRegistry metricRegistry) {
+            this.lane = lane;
+            this.threads = Math.max(1, threads);
+            this.workers = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), newThreadFactory("command-" + lane.key() + "-"));
+            this.waitTimer = metricRegistry.timer(MetricNames.commandLaneWait(lane.key()));
+            this.timeouts = metricRegistry.counter(MetricNames.commandLaneTimeouts(lane.key()));
+            this.cancellations = metricRegistry.counter(MetricNames.commandLaneCancelled(lane.key()));
+            metricRegistry.register(MetricNames.commandLaneDepth(lane.key()), (Gauge<Integer>) this::depth);
+            metricRegistry.register(MetricNames.commandLaneThreads(lane.key()), (Gauge<Integer>) this::size);
+        }
+
+        private <T> CompletableFuture<T> submit(String userId, Supplier<T> task, long timeout) {
+            Job<T> job = new Job<>(userId, task, timeout);
+            synchronized (this) {
+                UserSlot slot = users.computeIfAbsent(userId, k -> new UserSlot());
+                if (slot.active.size() >= userConcurrency) {
+                    log.debug("User {} has {} running invocations in {} lane, delaying the next one",
+                        userId, slot.active.size(), lane.key());
+                    slot.waiting.add(job);
+                    waiting++;
+                    return job.future;
+                }
+                slot.active.add(job);
+            }
+            dispatch(job);
+            return job.future;
+        }
+
+        private void dispatch(Job<?> job) {
+            try {
+                workers.execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                job.future.completeExceptionally(e);
+                release(job);
+            }
+        }
+
+        private <T> void run(Job<T> job) {
+            synchronized (job) {
+                // checked under the job lock, so abandon() either sees the worker or finds the job not started
+                if (job.future.isDone()) {
+                    // cancelled before it could start, its slot was already released
+                    return;
+                }
+                job.worker = Thread.currentThread();
+            }
+            waitTimer.update(System.nanoTime() - job.submitted, TimeUnit.NANOSECONDS);
+            ScheduledFuture<?> deadline = null;
+            if (job.timeout > 0) {
+                deadline = watchdog.schedule(() -> expire(job), job.timeout, TimeUnit.NANOSECONDS);
+            }
+            try {
+                job.future.complete(job.task.get());
+            } catch (Throwable t) {
+                job.future.completeExceptionally(t);
+            } finally {
+                boolean wasAbandoned;
+                synchronized (job) {
+                    job.worker = null;
+                    wasAbandoned = job.abandoned;
+                }
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                // clear a late interruption, so it doesn't leak into the next invocation on this thread
+                Thread.interrupted();
+                if (wasAbandoned) {
+                    resize(-1);
+                }
+                release(job);
+            }
+        }
+
+        private void expire(Job<?> job) {
+            if (job.future.completeExceptionally(new TimeoutException("Command timed out"))) {
+                log.warn("Invocation by user {} in {} lane timed out", job.userId, lane.key());
+                timeouts.inc();
+                abandon(job);
+            }
+        }
+
+        private int cancel(String userId) {
+            List<Job<?>> jobs = new ArrayList<>();
+            synchronized (this) {
+                UserSlot slot = users.get(userId);
+                if (slot != null) {
+                    for (Job<?> job : slot.waiting) {
+                        // never held a slot, so there is nothing to release
+                        job.released.set(true);
+                        jobs.add(job);
+                    }
+                    waiting -= slot.waiting.size();
+                    slot.waiting.clear();
+                    jobs.addAll(slot.active);
+                }
+            }
+            int count = 0;
+            for (Job<?> job : jobs) {
+                if (job.future.cancel(true)) {
+                    cancellations.inc();
+                    abandon(job);
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Release the slot of an invocation that finished abnormally, interrupting its thread if it's still running.
+         */
+        private void abandon(Job<?> job) {
+            synchronized (job) {
+                if (job.worker != null) {
+                    job.abandoned = true;
+                    // compensate for the busy thread until the invocation returns
+                    resize(1);
+                    job.worker.interrupt();
+                }
+            }
+            release(job);
+        }
+
+        private synchronized void resize(int delta) {
+            abandoned += delta;
+            int size = threads + abandoned;
+            if (delta > 0) {
+                workers.setMaximumPoolSize(size);
+                workers.setCorePoolSize(size);
+            } else {
+                workers.setCorePoolSize(size);
+                workers.setMaximumPoolSize(size);
+            }
+        }
+
+        private void release(Job<?> job) {
+            if (!job.released.compareAndSet(false, true)) {
+                return;
+            }
+            Job<?> next;
+            synchronized (this) {
+                UserSlot slot = users.get(job.userId);
+                if (slot == null) {
+                    return;
+                }
+                slot.active.remove(job);
+                next = slot.waiting.poll();
+                if (next != null) {
+                    waiting--;
+                    slot.active.add(next);
+                } else if (slot.active.isEmpty()) {
+                    users.remove(job.userId);
+                }
+            }
+            if (next != null) {
+                dispatch(next);
+            }
+        }
+
+        private synchronized int depth() {
+            return workers.getQueue().size() + waiting;
+        }
+
+        private synchronized int size() {
+            return threads + abandoned;
+        }
+    }
+
+    private static class UserSlot {
+        private final Set<Job<?>> active = new HashSet<>();
+        private final Deque<Job<?>> waiting = new ArrayDeque<>();
+    }
+
+    private static class Job<T> {
+        private final String userId;
+        private final Supplier<T> task;
+        private final long timeout;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final long submitted = System.nanoTime();
+        private volatile Thread worker;
+        private boolean abandoned = false;
+
+        private Job(String userId, Supplier<T> task, long timeout) {
+            this.userId = userId;
+            this.task = task;
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.ugcleague.ops.service.discord.command;
+
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/**
+ * Writer that sends its content as a sequence of messages, each one no longer than a length limit, as soon as enough
+ * content is written to fill one. Only about one message worth of content is kept in memory, regardless of the total
+ * length of the reply.
+ * <p>
+ * Messages are cut at the last line break that fits, or at the limit if a single line is too long. Markdown code
+ * blocks are kept balanced: a message cut inside a code block is closed with a fence, and the next one reopens it with
+ * the same language tag. Room for the closing fence is only taken from messages that need one.
+ */
+public class ReplyWriter extends Writer {
+
+    private static final String FENCE = "```";
+    private static final String CLOSING_FENCE = "\n" + FENCE;
+
+    private final int limit;
+    private final Consumer<String> sink;
+    private final StringBuilder buffer = new StringBuilder();
+    private boolean inCodeBlock = false;
+    private String codeBlockTag = "";
+    private boolean closed = false;
+
+    /**
+     * Create a new writer.
+     *
+     * @param lengthLimit maximum length of each message
+     * @param sink        action to send each message, called in order from the writing thread
+     */
+    public ReplyWriter(int lengthLimit, Consumer<String> sink) {
+        this.limit = Math.max(1, lengthLimit);
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        synchronized (lock) {
+            ensureOpen();
+            // feed large writes in pieces, so the buffer never grows much beyond one message
+            while (len > 0) {
+                int count = Math.min(len, limit);
+                buffer.append(cbuf, off, count);
+                off += count;
+                len -= count;
+                drain(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        synchronized (lock) {
+            ensureOpen();
+            while (len > 0) {
+                int count = Math.min(len, limit);
+                buffer.append(str, off, off + count);
+                off += count;
+                len -= count;
+                drain(false);
+            }
+        }
+    }
+
+    @Override
+    public ReplyWriter append(CharSequence csq) {
+        write(String.valueOf(csq));
+        return this;
+    }
+
+    @Override
+    public ReplyWriter append(CharSequence csq, int start, int end) {
+        write(String.valueOf(csq == null ? "null" : csq.subSequence(start, end)));
+        return this;
+    }
+
+    @Override
+    public ReplyWriter append(char c) {
+        write(String.valueOf(c));
+        return this;
+    }
+
+    /**
+     * Send all the content written so far, even if it doesn't fill a message.
+     */
+    @Override
+    public void flush() {
+        synchronized (lock) {
+            drain(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (!closed) {
+                drain(true);
+                closed = true;
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Reply was already sent");
+        }
+    }
+
+    private void drain(boolean all) {
+        while (buffer.length() > limit || (all && hasContent())) {
+            int end = cut(limit);
+            if (end > limit - CLOSING_FENCE.length() && endsInCodeBlock(end)) {
+                // leave room to close the code block
+                end = cut(limit - CLOSING_FENCE.length());
+            }
+            // the line break is replaced by the cut
+            int next = end < buffer.length() && buffer.charAt(end) == '\n' ? end + 1 : end;
+            String message = buffer.substring(0, end);
+            buffer.delete(0, next);
+            scanFences(message);
+            if (inCodeBlock) {
+                message = message + CLOSING_FENCE;
+                buffer.insert(0, FENCE + codeBlockTag + "\n");
+                // the reopening fence is part of the next message
+                inCodeBlock = false;
+            }
+            sink.accept(message);
+        }
+    }
+
+    private int cut(int maxLength) {
+        maxLength = Math.max(1, maxLength);
+        if (buffer.length() <= maxLength) {
+            return buffer.length();
+        }
+        // never cut right after a reopened code block, that message would have nothing in it
+        int first = buffer.indexOf(FENCE) == 0 ? buffer.indexOf("\n") : 0;
+        int newline = buffer.lastIndexOf("\n", maxLength);
+        return newline > first ? newline : maxLength;
+    }
+
+    private boolean endsInCodeBlock(int end) {
+        // the buffer always starts outside a code block, a cut one is reopened inside the buffer
+        boolean inside = false;
+        int index = buffer.indexOf(FENCE);
+        while (index >= 0 && index + FENCE.length() <= end) {
+            inside = !inside;
+            index = buffer.indexOf(FENCE, index + FENCE.length());
+        }
+        return inside;
+    }
+
+    private boolean hasContent() {
+        // a reopened code block with nothing in it is not worth sending
+        return buffer.length() > 0 && !buffer.toString().equals(FENCE + codeBlockTag + "\n");
+    }
+
+    private void scanFences(String message) {
+        int index = message.indexOf(FENCE);
+        while (index >= 0) {
+            inCodeBlock = !inCodeBlock;
+            int start = index + FENCE.length();
+            if (inCodeBlock) {
+                int lineEnd = message.indexOf('\n', start);
+                int close = message.indexOf(FENCE, start);
+                // only a fence followed by a line break can have a language tag
+                if (lineEnd >= 0 && (close < 0 || lineEnd < close)) {
+                    codeBlockTag = message.substring(start, lineEnd).trim();
+                } else {
+                    codeBlockTag = "";
+                }
+            }
+            index = message.indexOf(FENCE, start);
+        }
+    }
+}
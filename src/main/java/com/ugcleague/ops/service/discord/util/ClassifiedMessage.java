@@ -0,0 +1,79 @@
+package com.ugcleague.ops.service.discord.util;
+
+import com.ugcleague.ops.service.discord.command.Command;
+import sx.blah.discord.handle.obj.IMessage;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An incoming message together with the categories it belongs to, computed once so every consumer can decide with a
+ * simple check if it has something to do with the message.
+ */
+public class ClassifiedMessage {
+
+    private final IMessage message;
+    private final Command command;
+    private final boolean commandPrefixed;
+    private final List<String> publishers;
+    private final boolean soundBiteTrigger;
+
+    public ClassifiedMessage(IMessage message, Command command, boolean commandPrefixed, List<String> publishers,
+                             boolean soundBiteTrigger) {
+        this.message = message;
+        this.command = command;
+        this.commandPrefixed = commandPrefixed;
+        this.publishers = publishers;
+        this.soundBiteTrigger = soundBiteTrigger;
+    }
+
+    public IMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the command that handles this message, if any
+     */
+    public Optional<Command> getCommand() {
+        return Optional.ofNullable(command);
+    }
+
+    /**
+     * @return true if the message looks like a command invocation, even if no command handles it
+     */
+    public boolean isCommandPrefixed() {
+        return commandPrefixed;
+    }
+
+    /**
+     * @return the support publishers bound to the channel of this message, can be empty
+     */
+    public List<String> getPublishers() {
+        return publishers;
+    }
+
+    public boolean isSupportTraffic() {
+        return !publishers.isEmpty();
+    }
+
+    /**
+     * @return true if the message was sent to a channel where sound bites can be triggered
+     */
+    public boolean isSoundBiteTrigger() {
+        return soundBiteTrigger;
+    }
+
+    public boolean isIgnorable() {
+        return command == null && !commandPrefixed && publishers.isEmpty() && !soundBiteTrigger;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassifiedMessage{" +
+            "command=" + (command == null ? null : command.getKey()) +
+            ", commandPrefixed=" + commandPrefixed +
+            ", publishers=" + publishers +
+            ", soundBiteTrigger=" + soundBiteTrigger +
+            '}';
+    }
+}
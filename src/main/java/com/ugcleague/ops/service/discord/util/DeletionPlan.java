@@ -0,0 +1,64 @@
+package com.ugcleague.ops.service.discord.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Split of a list of messages to delete into bulk-delete batches and single deletes. Only messages accepted by the
+ * eligibility check go into batches, which must hold at least two messages: an eligible message left alone in the
+ * last batch is deleted on its own.
+ *
+ * @param <T> the type of the messages
+ */
+public class DeletionPlan<T> {
+
+    private final List<List<T>> batches;
+    private final List<T> singles;
+
+    private DeletionPlan(List<List<T>> batches, List<T> singles) {
+        this.batches = batches;
+        this.singles = singles;
+    }
+
+    /**
+     * Plan the deletion of the given messages.
+     *
+     * @param messages     the messages to delete
+     * @param bulkEligible check for messages that can be deleted in bulk
+     * @param batchSize    maximum messages per bulk delete
+     * @param <T>          the type of the messages
+     * @return the batches and single deletes, each keeping the original order of the messages
+     */
+    public static <T> DeletionPlan<T> of(List<T> messages, Predicate<T> bulkEligible, int batchSize) {
+        List<List<T>> batches = new ArrayList<>();
+        List<T> singles = new ArrayList<>();
+        List<T> batch = new ArrayList<>();
+        for (T message : messages) {
+            if (!bulkEligible.test(message)) {
+                singles.add(message);
+                continue;
+            }
+            batch.add(message);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (batch.size() == 1) {
+            singles.add(batch.get(0));
+        } else if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return new DeletionPlan<>(Collections.unmodifiableList(batches), Collections.unmodifiableList(singles));
+    }
+
+    public List<List<T>> getBatches() {
+        return batches;
+    }
+
+    public List<T> getSingles() {
+        return singles;
+    }
+}
@@ -3,13 +3,6 @@ package com.ugcleague.ops.service.discord.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sx.blah.discord.handle.obj.*;
-import sx.blah.discord.util.DiscordException;
-import sx.blah.discord.util.MissingPermissionsException;
-import sx.blah.discord.util.RequestBuffer;
-
-import java.util.List;
-
-import static com.ugcleague.ops.service.discord.util.DiscordLimiter.acquireDelete;
 
 public class DiscordUtil {
 
@@ -39,25 +32,5 @@ public class DiscordUtil {
         return String.format("%s/%s (%s)", role.getGuild().getName(), role.getName().replace("@", "@\u200B"), role.getID());
     }
 
-    public static void deleteInBatch(IChannel channel, List<IMessage> toDelete) {
-        if (toDelete.isEmpty()) {
-            log.info("No messages to delete");
-        } else {
-            log.info("Preparing to delete {} messages from {}", toDelete.size(), DiscordUtil.toString(channel));
-            for (int x = 0; x < (toDelete.size() / 100) + 1; x++) {
-                List<IMessage> subList = toDelete.subList(x * 100, Math.min(toDelete.size(), (x + 1) * 100));
-                RequestBuffer.request(() -> {
-                    try {
-                        acquireDelete();
-                        channel.getMessages().bulkDelete(subList);
-                    } catch (MissingPermissionsException | DiscordException e) {
-                        log.warn("Failed to delete message", e);
-                    }
-                    return null;
-                });
-            }
-        }
-    }
-
     private DiscordUtil() {}
 }
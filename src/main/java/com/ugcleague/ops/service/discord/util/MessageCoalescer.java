@@ -0,0 +1,160 @@
+package com.ugcleague.ops.service.discord.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Holds outbound messages for a short window, so bursts of messages to the same target are sent as a single request.
+ * Content offered to a key is sent once the window that started with the first offer is over: replaced content only
+ * keeps the latest value, like successive edits of a message, while appended content is joined by lines and packed
+ * into as few messages as the length limit allows.
+ */
+public class MessageCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageCoalescer.class);
+
+    private final long window;
+    private final int lengthLimit;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Batch> pending = new HashMap<>();
+
+    /**
+     * Create a new coalescer.
+     *
+     * @param window      time in milliseconds to hold the content of a key before sending it
+     * @param lengthLimit maximum length of each sent message when joining appended content
+     */
+    public MessageCoalescer(long window, int lengthLimit) {
+        this(window, lengthLimit, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "discord-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    MessageCoalescer(long window, int lengthLimit, ScheduledExecutorService scheduler) {
+        this.window = window;
+        this.lengthLimit = lengthLimit;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queue content that supersedes any content still pending for the same key.
+     *
+     * @param key     the target of the content, like the message being edited
+     * @param content the latest content
+     * @param sender  action to send the content once the window is over
+     */
+    public void replace(String key, String content, Consumer<String> sender) {
+        offer(key, content, sender, true);
+    }
+
+    /**
+     * Queue content to be sent along with any content still pending for the same key.
+     *
+     * @param key     the target of the content, like the channel receiving it
+     * @param content the content to add
+     * @param sender  action to send each packed message once the window is over
+     */
+    public void append(String key, String content, Consumer<String> sender) {
+        offer(key, content, sender, false);
+    }
+
+    private void offer(String key, String content, Consumer<String> sender, boolean replace) {
+        synchronized (this) {
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch();
+                pending.put(key, batch);
+                Batch scheduled = batch;
+                scheduler.schedule(() -> flush(key, scheduled), window, TimeUnit.MILLISECONDS);
+            }
+            if (replace) {
+                batch.contents.clear();
+            }
+            batch.contents.add(content);
+            batch.sender = sender;
+        }
+    }
+
+    /**
+     * Drop the content pending for a key, for example when its target no longer exists.
+     *
+     * @param key the target of the content
+     * @return <code>true</code> if there was pending content
+     */
+    public synchronized boolean discard(String key) {
+        return pending.remove(key) != null;
+    }
+
+    /**
+     * Send all pending content now.
+     */
+    public void flush() {
+        Map<String, Batch> batches;
+        synchronized (this) {
+            batches = new LinkedHashMap<>(pending);
+        }
+        batches.forEach(this::flush);
+    }
+
+    public void shutdown() {
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    private void flush(String key, Batch batch) {
+        synchronized (this) {
+            // the batch could have been discarded or already flushed
+            if (!pending.remove(key, batch)) {
+                return;
+            }
+        }
+        for (String message : pack(batch.contents, lengthLimit)) {
+            try {
+                batch.sender.accept(message);
+            } catch (Exception e) {
+                log.warn("Could not send coalesced message to {}: {}", key, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Join lines of content into as few messages as possible, without splitting any of them. Content longer than the
+     * limit is kept as a message on its own.
+     *
+     * @param contents    the content to join, in order
+     * @param lengthLimit maximum length of each message
+     * @return the joined messages
+     */
+    public static List<String> pack(List<String> contents, int lengthLimit) {
+        List<String> messages = new ArrayList<>();
+        StringBuilder current = null;
+        for (String content : contents) {
+            if (current != null && current.length() + 1 + content.length() > lengthLimit) {
+                messages.add(current.toString());
+                current = null;
+            }
+            if (current == null) {
+                current = new StringBuilder(content);
+            } else {
+                current.append('\n').append(content);
+            }
+        }
+        if (current != null) {
+            messages.add(current.toString());
+        }
+        return messages;
+    }
+
+    private static class Batch {
+        private final List<String> contents = new ArrayList<>();
+        private Consumer<String> sender;
+    }
+}
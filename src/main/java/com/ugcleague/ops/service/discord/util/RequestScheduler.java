@@ -0,0 +1,298 @@
+package com.ugcleague.ops.service.discord.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Ticker;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sx.blah.discord.util.RateLimitException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatches outbound Discord API requests without parking threads on rate limits. Requests are queued per bucket, and
+ * each bucket sends at most one request at a time and no faster than its rate, on top of a global rate shared by every
+ * bucket. Buckets can also share the rate of a group, like private channels sharing the private message budget, while
+ * still sending in parallel. When a bucket has to wait, for its own rate or after Discord rejects a request with a
+ * {@link RateLimitException}, the bucket is scheduled to resume later instead of sleeping: rejected requests go back to
+ * the head of their queue, so requests of a bucket are always sent in order. A global rate limit holds back every
+ * bucket, not only the one that hit it.
+ * <p>
+ * All bucket state is owned by a single dispatcher thread, while the requests themselves run in the given executor.
+ * Buckets are dropped once idle, so one bucket per channel or user doesn't pile up. Metrics are reported per kind of
+ * bucket, the part of its name before the first dot like <code>channel</code> or <code>private</code>: the queue depth
+ * and the time requests waited before being sent.
+ */
+public class RequestScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private final Executor executor;
+    private final MetricRegistry metricRegistry;
+    private final long globalInterval;
+    private final ScheduledExecutorService dispatcher;
+    private final Ticker ticker;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    private final Map<String, Kind> kinds = new ConcurrentHashMap<>();
+    private long globalNextFree;
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param executor       executor to send the requests
+     * @param metricRegistry registry for the bucket metrics
+     * @param globalRate     maximum requests per second across all buckets
+     */
+    public RequestScheduler(Executor executor, MetricRegistry metricRegistry, double globalRate) {
+        this(executor, metricRegistry, globalRate, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "discord-request-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        }), Ticker.systemTicker());
+    }
+
+    RequestScheduler(Executor executor, MetricRegistry metricRegistry, double globalRate,
+                     ScheduledExecutorService dispatcher, Ticker ticker) {
+        this.executor = executor;
+        this.metricRegistry = metricRegistry;
+        this.globalInterval = intervalOf(globalRate);
+        this.dispatcher = dispatcher;
+        this.ticker = ticker;
+        this.globalNextFree = ticker.read();
+    }
+
+    private static long intervalOf(double rate) {
+        return rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+    }
+
+    /**
+     * Queue a request to be sent as soon as its bucket allows it.
+     *
+     * @param bucket  the rate limit bucket of the request
+     * @param rate    maximum requests per second of the bucket, only used when the bucket is first created
+     * @param request the request to send
+     * @param <T>     the type of the result
+     * @return a future completed with the result of the request, or exceptionally if it failed for any reason other
+     * than rate limits
+     */
+    public <T> CompletableFuture<T> submit(String bucket, double rate, Request<T> request) {
+        return submit(null, bucket, rate, request);
+    }
+
+    /**
+     * Limit the combined rate of the buckets of a group. Must be called before submitting requests to the group.
+     *
+     * @param group the group name
+     * @param rate  maximum requests per second across the buckets of the group
+     */
+    public void limitGroup(String group, double rate) {
+        groups.put(group, new Group(intervalOf(rate), ticker.read()));
+    }
+
+    /**
+     * Queue a request to be sent as soon as its bucket and group allow it.
+     *
+     * @param group   the group of the bucket, or <code>null</code> if it's not part of a group
+     * @param bucket  the rate limit bucket of the request
+     * @param rate    maximum requests per second of the bucket, only used when the bucket is first created
+     * @param request the request to send
+     * @param <T>     the type of the result
+     * @return a future completed with the result of the request, or exceptionally if it failed for any reason other
+     * than rate limits
+     */
+    public <T> CompletableFuture<T> submit(String group, String bucket, double rate, Request<T> request) {
+        Pending<T> pending = new Pending<>(request, ticker.read());
+        Kind kind = kinds.computeIfAbsent(kindOf(bucket), Kind::new);
+        kind.depth.incrementAndGet();
+        try {
+            dispatcher.execute(() -> {
+                // looked up in the dispatcher thread, so a bucket is never used after being dropped
+                Bucket target = buckets.computeIfAbsent(bucket, k -> new Bucket(k, intervalOf(rate), kind,
+                    group == null ? null : groups.get(group), ticker.read()));
+                target.queue.add(pending);
+                dispatch(target);
+            });
+        } catch (RejectedExecutionException e) {
+            kind.depth.decrementAndGet();
+            pending.future.completeExceptionally(e);
+        }
+        return pending.future;
+    }
+
+    private static String kindOf(String bucket) {
+        int dot = bucket.indexOf('.');
+        return dot < 0 ? bucket : bucket.substring(0, dot);
+    }
+
+    /**
+     * @param kind the kind of bucket, like <code>channel</code>
+     * @return the number of requests of that kind waiting or being sent
+     */
+    public int getQueueDepth(String kind) {
+        Kind target = kinds.get(kind);
+        return target == null ? 0 : target.depth.get();
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    // the methods below only run in the dispatcher thread
+
+    private void dispatch(Bucket bucket) {
+        if (bucket.sending || bucket.resuming) {
+            return;
+        }
+        long now = ticker.read();
+        if (bucket.queue.isEmpty()) {
+            // keep an idle bucket until its rate allows another request, so dropping it can't let requests burst
+            if (bucket.nextFree - now > 0) {
+                resumeLater(bucket, bucket.nextFree - now);
+            } else {
+                buckets.remove(bucket.name, bucket);
+            }
+            return;
+        }
+        long ready = Math.max(bucket.nextFree, globalNextFree);
+        if (bucket.group != null) {
+            ready = Math.max(ready, bucket.group.nextFree);
+        }
+        if (ready - now > 0) {
+            resumeLater(bucket, ready - now);
+            return;
+        }
+        bucket.nextFree = now + bucket.interval;
+        globalNextFree = now + globalInterval;
+        if (bucket.group != null) {
+            bucket.group.nextFree = now + bucket.group.interval;
+        }
+        bucket.sending = true;
+        Pending<?> pending = bucket.queue.poll();
+        bucket.kind.waitTimer.update(now - pending.queued, TimeUnit.NANOSECONDS);
+        try {
+            executor.execute(() -> send(bucket, pending));
+        } catch (RejectedExecutionException e) {
+            bucket.kind.depth.decrementAndGet();
+            pending.future.completeExceptionally(e);
+            bucket.sending = false;
+            dispatch(bucket);
+        }
+    }
+
+    private void resumeLater(Bucket bucket, long delay) {
+        bucket.resuming = true;
+        dispatcher.schedule(() -> {
+            bucket.resuming = false;
+            dispatch(bucket);
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private <T> void send(Bucket bucket, Pending<T> pending) {
+        try {
+            T result = pending.request.send();
+            bucket.kind.depth.decrementAndGet();
+            pending.future.complete(result);
+            resume(bucket, null, 0, false);
+        } catch (RateLimitException e) {
+            if (e.isGlobal()) {
+                log.info("Delaying all requests for {} ms due to global rate limits", e.getRetryDelay());
+            } else {
+                log.info("Delaying requests on {} for {} ms due to rate limits on {}", bucket.name, e.getRetryDelay(),
+                    e.getBucket());
+            }
+            resume(bucket, pending, Math.max(1, e.getRetryDelay()), e.isGlobal());
+        } catch (Throwable t) {
+            bucket.kind.depth.decrementAndGet();
+            pending.future.completeExceptionally(t);
+            resume(bucket, null, 0, false);
+        }
+    }
+
+    private void resume(Bucket bucket, Pending<?> retry, long retryDelay, boolean global) {
+        try {
+            dispatcher.execute(() -> {
+                if (retry != null) {
+                    long retryAt = ticker.read() + TimeUnit.MILLISECONDS.toNanos(retryDelay);
+                    bucket.queue.addFirst(retry);
+                    bucket.nextFree = Math.max(bucket.nextFree, retryAt);
+                    if (global) {
+                        // other buckets see it when they next try to send
+                        globalNextFree = Math.max(globalNextFree, retryAt);
+                    }
+                }
+                bucket.sending = false;
+                dispatch(bucket);
+            });
+        } catch (RejectedExecutionException e) {
+            if (retry != null) {
+                retry.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Request<T> {
+        T send() throws Exception;
+    }
+
+    private static class Bucket {
+        private final String name;
+        private final long interval;
+        private final Kind kind;
+        private final Group group;
+        private final Deque<Pending<?>> queue = new ArrayDeque<>();
+        private long nextFree;
+        private boolean sending = false;
+        private boolean resuming = false;
+
+        private Bucket(String name, long interval, Kind kind, Group group, long now) {
+            this.name = name;
+            this.interval = interval;
+            this.kind = kind;
+            this.group = group;
+            this.nextFree = now;
+        }
+    }
+
+    private class Kind {
+        private final AtomicInteger depth = new AtomicInteger();
+        private final Timer waitTimer;
+
+        private Kind(String name) {
+            this.waitTimer = metricRegistry.timer(MetricNames.discordRequestWait(name));
+            metricRegistry.register(MetricNames.discordRequestDepth(name), (Gauge<Integer>) depth::get);
+        }
+    }
+
+    private static class Group {
+        private final long interval;
+        private long nextFree;
+
+        private Group(long interval, long now) {
+            this.interval = interval;
+            this.nextFree = now;
+        }
+    }
+
+    private static class Pending<T> {
+        private final Request<T> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long queued;
+
+        private Pending(Request<T> request, long queued) {
+            this.request = request;
+            this.queued = queued;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ugcleague.ops.service.discord.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for large numbers of delayed items that don't need precise timing, like messages to delete after
+ * a while. A single thread advances the wheel once per tick and hands every item due in that tick to the expiration
+ * handler at once, so the handler can group them. Scheduling is constant time and never blocks, and items can expire
+ * up to one tick late.
+ *
+ * @param <T> the type of the scheduled items
+ */
+public class TimerWheel<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickDuration;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    private final Consumer<List<T>> handler;
+    private final Queue<Entry<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final long start = System.nanoTime();
+    private final Thread worker;
+    private long tick = 0;
+
+    /**
+     * Create and start a new wheel.
+     *
+     * @param tickDuration duration of each tick
+     * @param unit         the unit of the tick duration
+     * @param wheelSize    number of slots of the wheel, rounded up to a power of two
+     * @param name         name of the wheel thread
+     * @param handler      action receiving the items due in each tick, called from the wheel thread
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickDuration, TimeUnit unit, int wheelSize, String name, Consumer<List<T>> handler) {
+        this.tickDuration = Math.max(1, unit.toNanos(tickDuration));
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.slots = new List[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.handler = handler;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedule an item to expire after a delay.
+     *
+     * @param item  the item
+     * @param delay the time to wait before the item expires
+     * @param unit  the unit of the delay
+     */
+    public void schedule(T item, long delay, TimeUnit unit) {
+        incoming.add(new Entry<>(item, System.nanoTime() - start + unit.toNanos(Math.max(0, delay))));
+    }
+
+    public void shutdown() {
+        worker.interrupt();
+    }
+
+    private void run() {
+        long next = start + tickDuration;
+        while (!Thread.currentThread().isInterrupted()) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            transferIncoming();
+            List<T> expired = expire(slots[(int) (tick & mask)]);
+            tick++;
+            next += tickDuration;
+            if (!expired.isEmpty()) {
+                try {
+                    handler.accept(expired);
+                } catch (Exception e) {
+                    log.warn("Could not handle {} expired items", expired.size(), e);
+                }
+            }
+        }
+    }
+
+    private void transferIncoming() {
+        Entry<T> entry;
+        while ((entry = incoming.poll()) != null) {
+            // the tick processed at (t + 1) * tickDuration is the first one at or after the deadline
+            long target = Math.max(tick, (entry.deadline + tickDuration - 1) / tickDuration - 1);
+            entry.rounds = (target - tick) / slots.length;
+            slots[(int) (target & mask)].add(entry);
+        }
+    }
+
+    private List<T> expire(List<Entry<T>> slot) {
+        List<T> expired = new ArrayList<>();
+        Iterator<Entry<T>> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+            Entry<T> entry = iterator.next();
+            if (entry.rounds <= 0) {
+                expired.add(entry.item);
+                iterator.remove();
+            } else {
+                entry.rounds--;
+            }
+        }
+        return expired;
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadline;
+        private long rounds;
+
+        private Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
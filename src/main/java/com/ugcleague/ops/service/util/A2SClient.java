@@ -0,0 +1,526 @@
+package com.ugcleague.ops.service.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Source server query (A2S) client that multiplexes every request over a single non-blocking UDP channel, served by
+ * one selector thread. Supports A2S_INFO, A2S_PLAYER and A2S_RULES including challenge numbers and split responses.
+ * <p>
+ * Only one query per server address is in flight at any given time, since responses can't be matched to their request
+ * otherwise. Further queries to the same address wait in order. After a timeout the address is left alone for a short
+ * grace period, dropping any late response to the expired query so it can't be credited to the next one. Futures are
+ * completed by the client thread, so dependent actions should be short or moved to another executor.
+ */
+public class A2SClient implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(A2SClient.class);
+
+    private static final int SINGLE_PACKET = -1;
+    private static final int SPLIT_PACKET = -2;
+    private static final byte A2S_INFO = 0x54;
+    private static final byte A2S_PLAYER = 0x55;
+    private static final byte A2S_RULES = 0x56;
+    private static final byte S2C_CHALLENGE = 0x41;
+    private static final byte S2A_INFO = 0x49;
+    private static final byte S2A_PLAYER = 0x44;
+    private static final byte S2A_RULES = 0x45;
+    private static final byte[] INFO_PAYLOAD = "Source Engine Query\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_CHALLENGE_ATTEMPTS = 3;
+    private static final int DEFAULT_PORT = 27015;
+    private static final long STALE_RESPONSE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long timeoutNanos;
+    private final Selector selector;
+    private final DatagramChannel channel;
+    private final Thread thread;
+    private final Queue<Query<?>> submitted = new ConcurrentLinkedQueue<>();
+    // the following are only accessed from the client thread
+    private final Map<InetSocketAddress, Deque<Query<?>>> queries = new HashMap<>();
+    private final Map<InetSocketAddress, SplitResponse> splits = new HashMap<>();
+    private final Map<InetSocketAddress, Long> quarantined = new HashMap<>();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(65535).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+
+    private volatile boolean running = true;
+
+    /**
+     * Opens the shared query channel and starts the client thread.
+     *
+     * @param timeout time to wait for each response
+     * @param unit    the time unit of the timeout
+     * @throws IOException if the channel could not be opened
+     */
+    public A2SClient(long timeout, TimeUnit unit) throws IOException {
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.selector = Selector.open();
+        this.channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(null);
+        channel.register(selector, SelectionKey.OP_READ);
+        this.thread = new Thread(this::run, "a2s-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Parse an address in the "host:port" form, using the default Source port if none is given.
+     *
+     * @param address the server address
+     * @return a socket address for the server
+     * @throws IllegalArgumentException if the address is invalid
+     */
+    public static InetSocketAddress toSocketAddress(String address) {
+        String[] parts = address.trim().split(":", 2);
+        int port = parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_PORT;
+        return new InetSocketAddress(parts[0], port);
+    }
+
+    /**
+     * Request the server information, with the same keys used by Steam Condenser
+     * (mapName, maxPlayers, gameVersion, tvPort, etc.)
+     *
+     * @param address the server address
+     * @return a future completed with the server information
+     */
+    public CompletableFuture<Map<String, Object>> info(InetSocketAddress address) {
+        return submit(address, A2S_INFO, S2A_INFO, (buffer, latency) -> parseInfo(buffer));
+    }
+
+    /**
+     * Measure the round-trip time of an A2S_INFO request.
+     *
+     * @param address the server address
+     * @return a future completed with the latency in milliseconds
+     */
+    public CompletableFuture<Integer> ping(InetSocketAddress address) {
+        return submit(address, A2S_INFO, S2A_INFO, (buffer, latency) -> (int) latency);
+    }
+
+    /**
+     * Request the server status with a single A2S_INFO round trip, using its latency as ping.
+     *
+     * @param address the server address
+     * @return a future completed with the status of the server
+     */
+    public CompletableFuture<StatusProbe> probe(InetSocketAddress address) {
+        return submit(address, A2S_INFO, S2A_INFO, (buffer, latency) -> StatusProbe.of((int) latency, parseInfo(buffer)));
+    }
+
+    public CompletableFuture<List<Player>> players(InetSocketAddress address) {
+        return submit(address, A2S_PLAYER, S2A_PLAYER, (buffer, latency) -> parsePlayers(buffer));
+    }
+
+    public CompletableFuture<Map<String, String>> rules(InetSocketAddress address) {
+        return submit(address, A2S_RULES, S2A_RULES, (buffer, latency) -> parseRules(buffer));
+    }
+
+    private <T> CompletableFuture<T> submit(InetSocketAddress address, byte request, byte response, Parser<T> parser) {
+        Query<T> query = new Query<>(address, request, response, parser);
+        if (!running) {
+            query.future.completeExceptionally(new ClosedChannelException());
+        } else {
+            submitted.add(query);
+            selector.wakeup();
+        }
+        return query.future;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // Client thread
+    ///////////////////////////////
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(nextTimeoutMillis());
+                selector.selectedKeys().clear();
+                Query<?> query;
+                while ((query = submitted.poll()) != null) {
+                    enqueue(query);
+                }
+                receive();
+                expire();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unexpected error in query loop: {}", e.toString());
+            }
+        }
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Could not close query channel: {}", e.toString());
+        }
+        ClosedChannelException closed = new ClosedChannelException();
+        queries.values().forEach(deque -> deque.forEach(q -> q.future.completeExceptionally(closed)));
+        submitted.forEach(q -> q.future.completeExceptionally(closed));
+    }
+
+    private long nextTimeoutMillis() {
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        for (Deque<Query<?>> deque : queries.values()) {
+            Query<?> head = deque.peek();
+            if (head != null && head.sent) {
+                next = Math.min(next, head.deadline - now);
+            }
+        }
+        for (Long until : quarantined.values()) {
+            next = Math.min(next, until - now);
+        }
+        // zero means no timeout at all, so always wait at least a millisecond for pending queries
+        return next == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(next));
+    }
+
+    private void enqueue(Query<?> query) {
+        Deque<Query<?>> deque = queries.computeIfAbsent(query.address, k -> new ArrayDeque<>());
+        deque.add(query);
+        if (deque.size() == 1 && !quarantined.containsKey(query.address)) {
+            send(query);
+        }
+    }
+
+    private void send(Query<?> query) {
+        sendBuffer.clear();
+        sendBuffer.putInt(SINGLE_PACKET).put(query.request);
+        if (query.request == A2S_INFO) {
+            sendBuffer.put(INFO_PAYLOAD);
+            if (query.challenge != -1) {
+                sendBuffer.putInt(query.challenge);
+            }
+        } else {
+            sendBuffer.putInt(query.challenge);
+        }
+        sendBuffer.flip();
+        try {
+            query.sent = true;
+            query.sentAt = System.nanoTime();
+            query.deadline = query.sentAt + timeoutNanos;
+            if (channel.send(sendBuffer, query.address) == 0) {
+                finish(query.address, null, new IOException("Send buffer is full"));
+            }
+        } catch (IOException | UnresolvedAddressException e) {
+            finish(query.address, null, e);
+        }
+    }
+
+    private void receive() throws IOException {
+        SocketAddress from;
+        while (true) {
+            receiveBuffer.clear();
+            from = channel.receive(receiveBuffer);
+            if (from == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            InetSocketAddress address = (InetSocketAddress) from;
+            if (quarantined.containsKey(address)) {
+                log.trace("Dropping late response from {}", address);
+                continue;
+            }
+            if (!queries.containsKey(address) || receiveBuffer.remaining() < 5) {
+                log.trace("Ignoring unexpected packet from {}", address);
+                continue;
+            }
+            int header = receiveBuffer.getInt();
+            if (header == SINGLE_PACKET) {
+                dispatch(address, receiveBuffer);
+            } else if (header == SPLIT_PACKET) {
+                receiveSplit(address, receiveBuffer);
+            }
+        }
+    }
+
+    private void receiveSplit(InetSocketAddress address, ByteBuffer buffer) {
+        try {
+            int id = buffer.getInt();
+            int total = buffer.get() & 0xFF;
+            int number = buffer.get() & 0xFF;
+            buffer.getShort(); // split size
+            if ((id & 0x80000000) != 0) {
+                finish(address, null, new IOException("Compressed responses are not supported"));
+                return;
+            }
+            if (number >= total) {
+                return;
+            }
+            SplitResponse split = splits.get(address);
+            if (split == null || split.id != id || split.parts.length != total) {
+                split = new SplitResponse(id, total);
+                splits.put(address, split);
+            }
+            if (split.parts[number] == null) {
+                byte[] part = new byte[buffer.remaining()];
+                buffer.get(part);
+                split.parts[number] = part;
+                split.size += part.length;
+                split.received++;
+            }
+            if (split.received == total) {
+                splits.remove(address);
+                ByteBuffer assembled = ByteBuffer.allocate(split.size).order(ByteOrder.LITTLE_ENDIAN);
+                for (byte[] part : split.parts) {
+                    assembled.put(part);
+                }
+                assembled.flip();
+                if (assembled.remaining() >= 5 && assembled.getInt() == SINGLE_PACKET) {
+                    dispatch(address, assembled);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            log.trace("Ignoring malformed split packet from {}", address);
+        }
+    }
+
+    private void dispatch(InetSocketAddress address, ByteBuffer buffer) {
+        Query<?> query = queries.get(address).peek();
+        byte type = buffer.get();
+        if (type == S2C_CHALLENGE && buffer.remaining() >= 4) {
+            if (++query.challengeAttempts > MAX_CHALLENGE_ATTEMPTS) {
+                finish(address, null, new IOException("Server kept sending challenges"));
+            } else {
+                query.challenge = buffer.getInt();
+                send(query);
+            }
+        } else if (type == query.response) {
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - query.sentAt);
+            try {
+                finish(address, query.parser.parse(buffer, latency), null);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                finish(address, null, new IOException("Malformed response", e));
+            }
+        } else {
+            log.trace("Ignoring response of type {} from {}", type, address);
+        }
+    }
+
+    private void expire() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<InetSocketAddress, Long>> iterator = quarantined.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<InetSocketAddress, Long> entry = iterator.next();
+            if (now - entry.getValue() >= 0) {
+                iterator.remove();
+                Deque<Query<?>> deque = queries.get(entry.getKey());
+                if (deque != null && !deque.isEmpty()) {
+                    send(deque.peek());
+                }
+            }
+        }
+        List<InetSocketAddress> expired = new ArrayList<>();
+        for (Map.Entry<InetSocketAddress, Deque<Query<?>>> entry : queries.entrySet()) {
+            Query<?> head = entry.getValue().peek();
+            if (head != null && head.sent && now - head.deadline >= 0) {
+                expired.add(entry.getKey());
+            }
+        }
+        for (InetSocketAddress address : expired) {
+            splits.remove(address);
+            // a late response would have the type the next query expects, so hold the next one back for a while
+            quarantined.put(address, now + STALE_RESPONSE_GRACE_NANOS);
+            finish(address, null, new TimeoutException("No response from " + address));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void finish(InetSocketAddress address, Object result, Throwable error) {
+        Deque<Query<?>> deque = queries.get(address);
+        Query<Object> query = (Query<Object>) deque.poll();
+        if (query != null) {
+            if (error != null) {
+                query.future.completeExceptionally(error);
+            } else {
+                query.future.complete(result);
+            }
+        }
+        if (deque.isEmpty()) {
+            queries.remove(address);
+        } else if (!quarantined.containsKey(address)) {
+            send(deque.peek());
+        }
+    }
+
+    // Response parsing
+    ///////////////////////////////
+
+    private static Map<String, Object> parseInfo(ByteBuffer buffer) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("networkVersion", buffer.get());
+        info.put("serverName", readString(buffer));
+        info.put("mapName", readString(buffer));
+        info.put("gameDir", readString(buffer));
+        info.put("gameDescription", readString(buffer));
+        info.put("appId", buffer.getShort() & 0xFFFF);
+        info.put("numberOfPlayers", buffer.get() & 0xFF);
+        info.put("maxPlayers", buffer.get() & 0xFF);
+        info.put("botNumber", buffer.get() & 0xFF);
+        info.put("dedicated", (char) buffer.get());
+        info.put("operatingSystem", (char) buffer.get());
+        info.put("passwordProtected", buffer.get() == 1);
+        info.put("secureServer", buffer.get() == 1);
+        info.put("gameVersion", readString(buffer));
+        if (buffer.hasRemaining()) {
+            byte flags = buffer.get();
+            if ((flags & 0x80) != 0) {
+                info.put("serverPort", buffer.getShort() & 0xFFFF);
+            }
+            if ((flags & 0x10) != 0) {
+                info.put("serverId", buffer.getLong());
+            }
+            if ((flags & 0x40) != 0) {
+                info.put("tvPort", buffer.getShort() & 0xFFFF);
+                info.put("tvName", readString(buffer));
+            }
+            if ((flags & 0x20) != 0) {
+                info.put("serverTags", readString(buffer));
+            }
+            if ((flags & 0x01) != 0) {
+                info.put("gameId", buffer.getLong());
+            }
+        }
+        return info;
+    }
+
+    private static List<Player> parsePlayers(ByteBuffer buffer) {
+        int count = buffer.get() & 0xFF;
+        List<Player> players = new ArrayList<>(count);
+        for (int i = 0; i < count && buffer.hasRemaining(); i++) {
+            int index = buffer.get() & 0xFF;
+            String name = readString(buffer);
+            int score = buffer.getInt();
+            float duration = buffer.getFloat();
+            players.add(new Player(index, name, score, duration));
+        }
+        return players;
+    }
+
+    private static Map<String, String> parseRules(ByteBuffer buffer) {
+        int count = buffer.getShort() & 0xFFFF;
+        Map<String, String> rules = new LinkedHashMap<>();
+        for (int i = 0; i < count && buffer.hasRemaining(); i++) {
+            rules.put(readString(buffer), readString(buffer));
+        }
+        return rules;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        if (buffer.hasRemaining()) {
+            buffer.get(); // null terminator
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Types
+    ///////////////////////////////
+
+    @FunctionalInterface
+    private interface Parser<T> {
+        T parse(ByteBuffer buffer, long latency);
+    }
+
+    private static class Query<T> {
+        private final InetSocketAddress address;
+        private final byte request;
+        private final byte response;
+        private final Parser<T> parser;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int challenge = -1;
+        private int challengeAttempts = 0;
+        private boolean sent;
+        private long sentAt;
+        private long deadline;
+
+        private Query(InetSocketAddress address, byte request, byte response, Parser<T> parser) {
+            this.address = address;
+            this.request = request;
+            this.response = response;
+            this.parser = parser;
+        }
+    }
+
+    private static class SplitResponse {
+        private final int id;
+        private final byte[][] parts;
+        private int received = 0;
+        private int size = 0;
+
+        private SplitResponse(int id, int total) {
+            this.id = id;
+            this.parts = new byte[total][];
+        }
+    }
+
+    public static class Player {
+        private final int index;
+        private final String name;
+        private final int score;
+        private final float duration;
+
+        public Player(int index, String name, int score, float duration) {
+            this.index = index;
+            this.name = name;
+            this.score = score;
+            this.duration = duration;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public float getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return "Player{" +
+                "index=" + index +
+                ", name='" + name + '\'' +
+                ", score=" + score +
+                ", duration=" + duration +
+                '}';
+        }
+    }
+}
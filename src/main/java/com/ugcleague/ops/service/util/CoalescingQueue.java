@@ -0,0 +1,54 @@
+package com.ugcleague.ops.service.util;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+
+/**
+ * Queue of pending work keyed by entity, where offering an item for an entity that is already queued merges both
+ * items instead of adding a new one. Items are drained in batches, in the order their keys were first queued.
+ *
+ * @param <K> the type of the entity key
+ * @param <V> the type of the queued items
+ */
+public class CoalescingQueue<K, V> {
+
+    private final Map<K, V> pending = new LinkedHashMap<>();
+    private final BinaryOperator<V> merger;
+
+    /**
+     * Create a new queue.
+     *
+     * @param merger function to combine the queued item of an entity (first argument) with a newly offered one
+     */
+    public CoalescingQueue(BinaryOperator<V> merger) {
+        this.merger = merger;
+    }
+
+    public synchronized void offer(K key, V value) {
+        pending.merge(key, value, merger);
+    }
+
+    /**
+     * Remove up to the given number of items from the queue.
+     *
+     * @param max maximum number of items to remove
+     * @return the removed items, oldest first
+     */
+    public synchronized List<V> drain(int max) {
+        List<V> batch = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<V> iterator = pending.values().iterator();
+        while (batch.size() < max && iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,133 @@
+package com.ugcleague.ops.service.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs a function over a collection of items using a bounded number of threads. Each item gets its own deadline,
+ * counted from the moment its work actually starts, and the whole batch is bounded by an overall deadline after which
+ * every straggler is cancelled.
+ */
+public class FanOutExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(FanOutExecutor.class);
+
+    private final String name;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService watchdog;
+
+    public FanOutExecutor(String name, int concurrency) {
+        this.name = name;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, concurrency), newThreadFactory(name + "-"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(newThreadFactory(name + "-watchdog-"));
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Apply the given function to every item concurrently and wait for the results.
+     *
+     * @param items        the items to process
+     * @param function     the work to perform on each item, it should react to interruption if possible
+     * @param itemTimeout  maximum time a single item can take once started
+     * @param batchTimeout maximum time to wait for the whole batch
+     * @param unit         time unit of both timeouts
+     * @param <T>          the type of the input items
+     * @param <R>          the type of the results
+     * @return the results mapped by their item, in the same order as the input. Items that failed, timed out or were
+     * cancelled are not present in the result.
+     */
+    public <T, R> Map<T, R> invokeAll(Collection<T> items, Function<T, R> function,
+                                      long itemTimeout, long batchTimeout, TimeUnit unit) {
+        return invokeAll(items, function, item -> 0L, itemTimeout, batchTimeout, unit);
+    }
+
+    /**
+     * Apply the given function to every item concurrently, delaying the start of each item, and wait for the results.
+     * The batch deadline is counted from the moment this method is called, so it must also cover the start delays.
+     *
+     * @param items        the items to process
+     * @param function     the work to perform on each item, it should react to interruption if possible
+     * @param startDelay   how long to wait before submitting each item
+     * @param itemTimeout  maximum time a single item can take once started
+     * @param batchTimeout maximum time to wait for the whole batch
+     * @param unit         time unit of the delays and both timeouts
+     * @param <T>          the type of the input items
+     * @param <R>          the type of the results
+     * @return the results mapped by their item, in the same order as the input. Items that failed, timed out or were
+     * cancelled are not present in the result.
+     */
+    public <T, R> Map<T, R> invokeAll(Collection<T> items, Function<T, R> function, ToLongFunction<T> startDelay,
+                                      long itemTimeout, long batchTimeout, TimeUnit unit) {
+        Map<T, FutureTask<R>> tasks = new LinkedHashMap<>();
+        for (T item : items) {
+            FutureTask<R> task = new FutureTask<>(() -> function.apply(item));
+            tasks.put(item, task);
+            Runnable runner = () -> {
+                if (!task.isDone()) {
+                    ScheduledFuture<?> deadline = watchdog.schedule(() -> task.cancel(true), itemTimeout, unit);
+                    task.run();
+                    deadline.cancel(false);
+                }
+            };
+            long delay = startDelay.applyAsLong(item);
+            if (delay > 0) {
+                watchdog.schedule(() -> workers.execute(runner), delay, unit);
+            } else {
+                workers.execute(runner);
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(batchTimeout);
+        Map<T, R> results = new LinkedHashMap<>();
+        List<T> failed = new ArrayList<>();
+        for (Map.Entry<T, FutureTask<R>> entry : tasks.entrySet()) {
+            FutureTask<R> task = entry.getValue();
+            try {
+                R result = task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (result != null) {
+                    results.put(entry.getKey(), result);
+                }
+            } catch (TimeoutException e) {
+                // the batch deadline has passed: cancel every straggler now, so queued ones never start
+                tasks.values().forEach(t -> t.cancel(true));
+                failed.add(entry.getKey());
+            } catch (CancellationException e) {
+                failed.add(entry.getKey());
+            } catch (ExecutionException e) {
+                log.warn("[{}] Task for {} failed: {}", name, entry.getKey(), e.getCause().toString());
+                failed.add(entry.getKey());
+            } catch (InterruptedException e) {
+                log.warn("[{}] Interrupted while waiting for results", name);
+                tasks.values().forEach(t -> t.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.info("[{}] {} of {} tasks did not complete in time: {}", name, failed.size(), tasks.size(), failed);
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ugcleague.ops.service.util;
+
+import com.codahale.metrics.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads every gauge of the registry like a regular reporter would, recording how long it takes into a timer. Since
+ * gauges must be cheap views over data collected elsewhere, this timer should stay in the microsecond range; any gauge
+ * taking longer than the configured threshold is logged, as it will also stall the Graphite and Mongo reporters.
+ */
+public class GaugeLatencyReporter extends ScheduledReporter {
+
+    private static final Logger log = LoggerFactory.getLogger(GaugeLatencyReporter.class);
+    private static final long SLOW_GAUGE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Timer timer;
+
+    public GaugeLatencyReporter(MetricRegistry registry) {
+        super(registry, "gauge-latency-reporter", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        this.timer = registry.timer(MetricNames.METRICS_GAUGE_READ);
+    }
+
+    @Override
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters,
+                       SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters,
+                       SortedMap<String, Timer> timers) {
+        long total = 0;
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            long start = System.nanoTime();
+            try {
+                entry.getValue().getValue();
+            } catch (Exception e) {
+                log.debug("Could not read gauge {}: {}", entry.getKey(), e.toString());
+            }
+            long elapsed = System.nanoTime() - start;
+            if (elapsed > SLOW_GAUGE_NANOS) {
+                log.warn("Gauge {} took {} ms to read", entry.getKey(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            total += elapsed;
+        }
+        timer.update(total, TimeUnit.NANOSECONDS);
+    }
+}
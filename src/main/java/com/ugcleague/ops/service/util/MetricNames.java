@@ -10,6 +10,19 @@ public class MetricNames {
     public static final String DISCORD_USERS_ONLINE = "discord.users.online";
     public static final String DISCORD_WS_RESTARTS = "discord.ws.restarts";
     public static final String HEALTH_DISCORD_WS = "Discord.WebSocket";
+    public static final String GAME_SERVER_STATUS_SWEEP = "gs.status.sweep";
+    public static final String GAME_SERVER_WRITES = "gs.writes.written";
+    public static final String GAME_SERVER_WRITES_SKIPPED = "gs.writes.skipped";
+    public static final String GAME_SERVER_WRITES_FIELDS = "gs.writes.fields";
+    public static final String GAME_SERVER_OUTBOUND_RATE = "gs.outbound.rate";
+    public static final String METRICS_GAUGE_READ = "metrics.gauges.read";
+    public static final String PERMISSION_CACHE_HITS = "permissions.cache.hits";
+    public static final String PERMISSION_CACHE_MISSES = "permissions.cache.misses";
+    public static final String PERMISSION_CACHE_EVICTIONS = "permissions.cache.evictions";
+    public static final String PERMISSION_CACHE_SIZE = "permissions.cache.size";
+    public static final String DISCORD_FANOUT_LATENCY = "discord.fanout.latency";
+    public static final String DISCORD_FANOUT_DELIVERED = "discord.fanout.delivered";
+    public static final String DISCORD_FANOUT_FAILED = "discord.fanout.failed";
 
     public static String gameServerPing(GameServer server) {
         return MetricRegistry.name("gs", "ping", server.getShortName());
@@ -19,6 +32,54 @@ public class MetricNames {
         return MetricRegistry.name("gs", "players", server.getShortName());
     }
 
+    public static String commandLaneWait(String lane) {
+        return MetricRegistry.name("commands", "lanes", lane, "wait");
+    }
+
+    public static String commandLaneDepth(String lane) {
+        return MetricRegistry.name("commands", "lanes", lane, "depth");
+    }
+
+    public static String commandLaneThreads(String lane) {
+        return MetricRegistry.name("commands", "lanes", lane, "threads");
+    }
+
+    public static String commandLaneTimeouts(String lane) {
+        return MetricRegistry.name("commands", "lanes", lane, "timeouts");
+    }
+
+    public static String commandLaneCancelled(String lane) {
+        return MetricRegistry.name("commands", "lanes", lane, "cancelled");
+    }
+
+    /**
+     * Convert a command key to a metric name segment, dropping the leading dot and joining its tokens with dashes, so
+     * <code>.announce start</code> becomes <code>announce-start</code>.
+     *
+     * @param key the command key
+     * @return the name segment for the command
+     */
+    public static String commandKey(String key) {
+        String name = key.startsWith(".") ? key.substring(1) : key;
+        return name.trim().replaceAll("[\\s.]+", "-");
+    }
+
+    public static String commandLatency(String command, String phase) {
+        return MetricRegistry.name("commands", "latency", command, phase);
+    }
+
+    public static String commandOutcome(String command, String outcome) {
+        return MetricRegistry.name("commands", "outcomes", command, outcome);
+    }
+
+    public static String discordRequestWait(String kind) {
+        return MetricRegistry.name("discord", "requests", kind, "wait");
+    }
+
+    public static String discordRequestDepth(String kind) {
+        return MetricRegistry.name("discord", "requests", kind, "depth");
+    }
+
     private MetricNames() {
 
     }
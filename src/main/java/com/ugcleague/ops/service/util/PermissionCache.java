@@ -0,0 +1,153 @@
+package com.ugcleague.ops.service.util;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded store of permission decisions, where each entry expires a fixed time after being computed. Entries are
+ * indexed by permission, user and channel, and also remember the guild of the channel, so changes to a single user,
+ * channel or guild only discard the decisions they can affect.
+ * <p>
+ * Decisions made on private channels depend on every guild the bot is in, so they are treated as part of every guild.
+ */
+public class PermissionCache {
+
+    private final Cache<Key, Boolean> cache;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maximumSize maximum number of decisions to keep, evicting the least recently used ones
+     * @param timeToLive  time in milliseconds a decision is kept after being computed
+     */
+    public PermissionCache(long maximumSize, long timeToLive) {
+        this(maximumSize, timeToLive, Ticker.systemTicker());
+    }
+
+    PermissionCache(long maximumSize, long timeToLive, Ticker ticker) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+            .ticker(ticker)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Retrieve a cached decision.
+     *
+     * @param permission the permission name
+     * @param userId     the user identifier, or "0" when the decision applies to anyone
+     * @param channelId  the channel identifier
+     * @return the cached decision, or <code>null</code> if it's not cached
+     */
+    public Boolean get(String permission, String userId, String channelId) {
+        return cache.getIfPresent(new Key(permission, userId, channelId, null));
+    }
+
+    /**
+     * Store a decision.
+     *
+     * @param permission the permission name
+     * @param userId     the user identifier, or "0" when the decision applies to anyone
+     * @param channelId  the channel identifier
+     * @param guildId    the guild of the channel, or <code>null</code> for private channels
+     * @param result     the decision
+     */
+    public void put(String permission, String userId, String channelId, String guildId, boolean result) {
+        cache.put(new Key(permission, userId, channelId, guildId), result);
+    }
+
+    /**
+     * Discard every decision about a user, in any channel.
+     *
+     * @param userId the user identifier
+     */
+    public void invalidateUser(String userId) {
+        invalidateIf(k -> k.userId.equals(userId));
+    }
+
+    /**
+     * Discard the decisions about a user that could depend on a guild.
+     *
+     * @param userId  the user identifier
+     * @param guildId the guild identifier
+     */
+    public void invalidateUser(String userId, String guildId) {
+        invalidateIf(k -> k.userId.equals(userId) && k.isAffectedBy(guildId));
+    }
+
+    /**
+     * Discard every decision made in a channel.
+     *
+     * @param channelId the channel identifier
+     */
+    public void invalidateChannel(String channelId) {
+        invalidateIf(k -> k.channelId.equals(channelId));
+    }
+
+    /**
+     * Discard every decision that could depend on a guild: those made in its channels and in private channels.
+     *
+     * @param guildId the guild identifier
+     */
+    public void invalidateGuild(String guildId) {
+        invalidateIf(k -> k.isAffectedBy(guildId));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private void invalidateIf(Predicate<Key> predicate) {
+        cache.asMap().keySet().removeIf(predicate);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static class Key {
+        private final String permission;
+        private final String userId;
+        private final String channelId;
+        // not part of the identity, since the channel already determines it
+        private final String guildId;
+
+        private Key(String permission, String userId, String channelId, String guildId) {
+            this.permission = permission;
+            this.userId = userId;
+            this.channelId = channelId;
+            this.guildId = guildId;
+        }
+
+        private boolean isAffectedBy(String guildId) {
+            return this.guildId == null || this.guildId.equals(guildId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(permission, key.permission) &&
+                Objects.equals(userId, key.userId) &&
+                Objects.equals(channelId, key.channelId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(permission, userId, channelId);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.ugcleague.ops.service.util;
+
+import com.ugcleague.ops.domain.document.*;
+import com.ugcleague.ops.domain.util.PermissionProvider;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory model of the bot permissions granted to users, roles, channels and guilds. Each permission is assigned a
+ * bit, and each entity keeps its allowed and denied permissions as bitsets, so a decision is a few bitwise operations
+ * with no database access.
+ * <p>
+ * The graph must be updated with every saved entity to stay in sync with the database. Nodes are immutable and
+ * replaced on each update, so decisions can be made concurrently with updates.
+ */
+public class PermissionGraph {
+
+    private final AtomicInteger nextBit = new AtomicInteger();
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+    private final Set<String> defined = ConcurrentHashMap.newKeySet();
+    private final Map<String, Node> users = new ConcurrentHashMap<>();
+    private final Map<String, Node> guilds = new ConcurrentHashMap<>();
+    private final Map<String, Node> roles = new ConcurrentHashMap<>();
+    private final Map<String, Node> channels = new ConcurrentHashMap<>();
+    private volatile BitSet defaultAllowed = new BitSet();
+
+    public synchronized void update(Permission permission) {
+        int bit = bit(permission.getName());
+        defined.add(permission.getName());
+        BitSet updated = (BitSet) defaultAllowed.clone();
+        updated.set(bit, permission.isDefaultAllow());
+        defaultAllowed = updated;
+    }
+
+    /**
+     * Store the permissions of a user.
+     *
+     * @param user the saved user
+     * @return <code>true</code> if the permissions of the user changed
+     */
+    public boolean update(DiscordUser user) {
+        return put(users, user.getId(), user, user.getName());
+    }
+
+    /**
+     * Store the permissions of a guild and all of its roles.
+     *
+     * @param guild the saved guild
+     * @return <code>true</code> if the permissions of the guild or any of its roles changed
+     */
+    public boolean update(DiscordGuild guild) {
+        boolean changed = put(guilds, guild.getId(), guild, guild.getName());
+        for (DiscordRole role : guild.getRoles()) {
+            changed |= put(roles, role.getId(), role, role.getName());
+        }
+        return changed;
+    }
+
+    /**
+     * Store the permissions of a channel.
+     *
+     * @param channel the saved channel
+     * @return <code>true</code> if the permissions of the channel changed
+     */
+    public boolean update(DiscordChannel channel) {
+        return put(channels, channel.getId(), channel, channel.getName());
+    }
+
+    private boolean put(Map<String, Node> nodes, String id, PermissionProvider provider, String name) {
+        Node node = new Node(mask(provider.getAllowed()), mask(provider.getDenied()), name);
+        Node previous = nodes.put(id, node);
+        return previous == null || !previous.allowed.equals(node.allowed) || !previous.denied.equals(node.denied);
+    }
+
+    private BitSet mask(Set<Permission> permissions) {
+        BitSet mask = new BitSet();
+        for (Permission permission : permissions) {
+            mask.set(bit(permission.getName()));
+        }
+        return mask;
+    }
+
+    private int bit(String name) {
+        return bits.computeIfAbsent(name, k -> nextBit.getAndIncrement());
+    }
+
+    public boolean isDefined(String permission) {
+        return defined.contains(permission);
+    }
+
+    public boolean hasNamedUser(String id) {
+        return hasNamed(users, id);
+    }
+
+    public boolean hasNamedGuild(String id) {
+        return hasNamed(guilds, id);
+    }
+
+    public boolean hasNamedChannel(String id) {
+        return hasNamed(channels, id);
+    }
+
+    public boolean hasRole(String id) {
+        return roles.containsKey(id);
+    }
+
+    private boolean hasNamed(Map<String, Node> nodes, String id) {
+        Node node = nodes.get(id);
+        return node != null && node.name != null;
+    }
+
+    /**
+     * Decide if a permission is granted, combining the permissions of the user, guild, roles and channel. A
+     * permission is granted if none of them deny it and either one of them allows it or it's allowed by default.
+     *
+     * @param permission the permission name
+     * @param userId     the user identifier, or "0" when the decision applies to anyone
+     * @param guildId    the guild identifier
+     * @param roleIds    the roles of the user in the guild
+     * @param channelId  the channel identifier
+     * @return <code>true</code> if the permission is granted, <code>false</code> if it's denied or not defined
+     */
+    public boolean canPerform(String permission, String userId, String guildId, Collection<String> roleIds,
+                              String channelId) {
+        Integer bit = bits.get(permission);
+        if (bit == null || !defined.contains(permission)) {
+            return false;
+        }
+        BitSet allowed = (BitSet) defaultAllowed.clone();
+        BitSet denied = new BitSet();
+        apply(users.get(userId), allowed, denied);
+        apply(guilds.get(guildId), allowed, denied);
+        for (String roleId : roleIds) {
+            apply(roles.get(roleId), allowed, denied);
+        }
+        apply(channels.get(channelId), allowed, denied);
+        return !denied.get(bit) && allowed.get(bit);
+    }
+
+    private void apply(Node node, BitSet allowed, BitSet denied) {
+        if (node != null) {
+            allowed.or(node.allowed);
+            denied.or(node.denied);
+        }
+    }
+
+    private static class Node {
+        private final BitSet allowed;
+        private final BitSet denied;
+        private final String name;
+
+        private Node(BitSet allowed, BitSet denied, String name) {
+            this.allowed = allowed;
+            this.denied = denied;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ugcleague.ops.service.util;
+
+import com.ugcleague.ops.domain.document.GameServer;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Decides when each game server should be polled next, based on its last known state:
+ * <ul>
+ * <li>Busy servers (players connected or a game update in progress) are polled at the shortest interval.</li>
+ * <li>Claimed but empty servers are polled at the idle interval.</li>
+ * <li>Unclaimed servers (expire date in the past) are polled at the longest interval.</li>
+ * <li>Servers that don't respond back off exponentially, starting at the busy interval, up to a maximum.</li>
+ * </ul>
+ * Servers that were never polled are always due.
+ */
+public class PollSchedule {
+
+    private final long busyInterval;
+    private final long idleInterval;
+    private final long unclaimedInterval;
+    private final long deadMaxInterval;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new schedule using the given intervals, in milliseconds.
+     *
+     * @param busyInterval      interval for servers with players or being updated
+     * @param idleInterval      interval for claimed servers without players
+     * @param unclaimedInterval interval for servers that are not claimed
+     * @param deadMaxInterval   maximum interval for servers that don't respond
+     */
+    public PollSchedule(long busyInterval, long idleInterval, long unclaimedInterval, long deadMaxInterval) {
+        this.busyInterval = busyInterval;
+        this.idleInterval = idleInterval;
+        this.unclaimedInterval = unclaimedInterval;
+        this.deadMaxInterval = deadMaxInterval;
+    }
+
+    public boolean isDue(GameServer server, Instant now) {
+        State state = states.get(server.getId());
+        return state == null || !state.nextPoll.isAfter(now);
+    }
+
+    public List<GameServer> due(Collection<GameServer> servers, Instant now) {
+        return servers.stream().filter(s -> isDue(s, now)).collect(Collectors.toList());
+    }
+
+    /**
+     * Register that the given server was just polled, scheduling its next poll according to its refreshed state.
+     *
+     * @param server   the polled server, with its status already refreshed
+     * @param updating if the server has a game update in progress
+     * @param now      the time of the poll
+     * @return the time the server will be due again
+     */
+    public Instant record(GameServer server, boolean updating, Instant now) {
+        State state = states.compute(server.getId(), (id, previous) -> {
+            int failures = isDead(server) ? (previous == null ? 0 : previous.failures) + 1 : 0;
+            return new State(now, now.plusMillis(interval(server, updating, failures, now)), failures);
+        });
+        return state.nextPoll;
+    }
+
+    public Optional<Instant> getNextPoll(GameServer server) {
+        return Optional.ofNullable(states.get(server.getId())).map(s -> s.nextPoll);
+    }
+
+    /**
+     * @param server the server to query
+     * @return the last time the server was polled since startup, or empty if it wasn't polled yet
+     */
+    public Optional<Instant> getLastPoll(GameServer server) {
+        return Optional.ofNullable(states.get(server.getId())).map(s -> s.lastPoll);
+    }
+
+    public void forget(GameServer server) {
+        states.remove(server.getId());
+    }
+
+    /**
+     * Calculate the polling interval of a server.
+     *
+     * @param server   the server to check
+     * @param updating if the server has a game update in progress
+     * @param failures number of consecutive polls the server did not respond
+     * @param now      the current time
+     * @return the time in milliseconds until the next poll
+     */
+    public long interval(GameServer server, boolean updating, int failures, Instant now) {
+        if (failures > 0) {
+            return Math.min(busyInterval << Math.min(failures - 1, 20), deadMaxInterval);
+        } else if (updating || (server.getPlayers() != null && server.getPlayers() > 0)) {
+            return busyInterval;
+        } else if (server.getExpireDate() != null && server.getExpireDate().toInstant().isBefore(now)) {
+            return unclaimedInterval;
+        } else {
+            return idleInterval;
+        }
+    }
+
+    private boolean isDead(GameServer server) {
+        return server.getPing() != null && server.getPing() < 0;
+    }
+
+    private static class State {
+        private final Instant lastPoll;
+        private final Instant nextPoll;
+        private final int failures;
+
+        private State(Instant lastPoll, Instant nextPoll, int failures) {
+            this.lastPoll = lastPoll;
+            this.nextPoll = nextPoll;
+            this.failures = failures;
+        }
+    }
+}
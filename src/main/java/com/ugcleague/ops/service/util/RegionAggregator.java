@@ -0,0 +1,116 @@
+package com.ugcleague.ops.service.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maintains the ping and player totals of every region as new server samples arrive, so reading an aggregate is a
+ * constant time operation that never needs to visit each server. Each server only contributes its latest sample:
+ * when a new one arrives, the previous contribution is replaced.
+ * <p>
+ * Only responsive servers contribute: pings must be positive and player counts non-negative.
+ */
+public class RegionAggregator {
+
+    private final Map<String, Contribution> latest = new HashMap<>();
+    private final Map<String, Totals> regions = new LinkedHashMap<>();
+    private final Totals global = new Totals();
+
+    /**
+     * Register the latest sample of a server.
+     *
+     * @param serverId the server identifier
+     * @param region   the region of the server
+     * @param ping     latest ping, a non-positive value if the server did not respond
+     * @param players  latest player count, a negative value if the server did not respond
+     */
+    public synchronized void update(String serverId, String region, int ping, int players) {
+        Contribution previous = latest.get(serverId);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+        Contribution contribution = new Contribution(region, ping, players);
+        latest.put(serverId, contribution);
+        apply(contribution, 1);
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        Totals totals = regions.computeIfAbsent(contribution.region, k -> new Totals());
+        if (contribution.ping > 0) {
+            totals.pingSum += sign * contribution.ping;
+            totals.pingCount += sign;
+            global.pingSum += sign * contribution.ping;
+            global.pingCount += sign;
+        }
+        if (contribution.players >= 0) {
+            totals.playerSum += sign * contribution.players;
+            totals.playerCount += sign;
+            global.playerSum += sign * contribution.players;
+            global.playerCount += sign;
+        }
+    }
+
+    public synchronized void ensureRegion(String region) {
+        regions.computeIfAbsent(region, k -> new Totals());
+    }
+
+    public synchronized double getAveragePing(String region) {
+        return average(regions.get(region), true);
+    }
+
+    public synchronized long getPlayerCount(String region) {
+        Totals totals = regions.get(region);
+        return totals == null ? 0 : totals.playerSum;
+    }
+
+    public synchronized double getAveragePlayers(String region) {
+        return average(regions.get(region), false);
+    }
+
+    public synchronized long getPlayerCount() {
+        return global.playerSum;
+    }
+
+    public synchronized double getAveragePlayers() {
+        return average(global, false);
+    }
+
+    /**
+     * Average the player average of every region, so each region weighs the same regardless of its number of servers.
+     * Regions without responsive servers count as zero.
+     *
+     * @return the average of the region player averages
+     */
+    public synchronized double getAverageOfRegionPlayers() {
+        return regions.values().stream().mapToDouble(totals -> average(totals, false)).average().orElse(0.0);
+    }
+
+    private double average(Totals totals, boolean ping) {
+        if (totals == null) {
+            return 0.0;
+        }
+        long count = ping ? totals.pingCount : totals.playerCount;
+        long sum = ping ? totals.pingSum : totals.playerSum;
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    private static class Totals {
+        private long pingSum;
+        private long pingCount;
+        private long playerSum;
+        private long playerCount;
+    }
+
+    private static class Contribution {
+        private final String region;
+        private final int ping;
+        private final int players;
+
+        private Contribution(String region, int ping, int players) {
+            this.region = region;
+            this.ping = ping;
+            this.players = players;
+        }
+    }
+}
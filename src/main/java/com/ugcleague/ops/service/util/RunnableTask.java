@@ -6,16 +6,43 @@ import it.sauronsoftware.cron4j.TaskExecutionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class RunnableTask extends Task {
 
     private static final Logger log = LoggerFactory.getLogger(RunnableTask.class);
 
     private final ScheduledTask task;
     private final Runnable runnable;
+    private final long startDelay;
+    private final ScheduledExecutorService starter;
+    private final Executor executor;
 
     public RunnableTask(ScheduledTask task, Runnable runnable) {
+        this(task, runnable, 0, null, null);
+    }
+
+    /**
+     * Create a task that starts a fixed time after each trigger, to move it off the minute boundary. The trigger
+     * returns right away and the starter only waits for the delay, then hands the run to the given executor, so no
+     * thread waits in between and long runs never hold a starter thread.
+     *
+     * @param task       the task definition
+     * @param runnable   the work to run
+     * @param startDelay the time to wait after each trigger, in milliseconds
+     * @param starter    the executor waiting for the delayed starts
+     * @param executor   the executor running the delayed and one-off runs
+     */
+    public RunnableTask(ScheduledTask task, Runnable runnable, long startDelay, ScheduledExecutorService starter,
+                        Executor executor) {
         this.task = task;
         this.runnable = runnable;
+        this.startDelay = starter == null || executor == null ? 0 : startDelay;
+        this.starter = starter;
+        this.executor = executor;
     }
 
     public ScheduledTask getTask() {
@@ -29,13 +56,63 @@ public class RunnableTask extends Task {
     @Override
     public void execute(TaskExecutionContext context) {
         if (task.getEnabled()) {
-            log.debug("**** Running {} task", task.getName());
-            runnable.run();
+            if (startDelay > 0) {
+                start(this::run, startDelay);
+            } else {
+                run();
+            }
         } else {
             log.debug("**** Task {} is not enabled", task.getName());
         }
     }
 
+    /**
+     * Run the task once, besides its schedule and even if it's not enabled. Failures are logged like scheduled runs.
+     *
+     * @param delay the time to wait before running it, in milliseconds
+     */
+    public void runOnce(long delay) {
+        Runnable once = () -> {
+            if (run()) {
+                log.info("One-off execution of {} was completed", task.getName());
+            }
+        };
+        if (starter == null || executor == null) {
+            log.warn("Task {} can't be run outside of its schedule", task.getName());
+        } else if (delay > 0) {
+            start(once, delay);
+        } else {
+            handOff(once);
+        }
+    }
+
+    private void start(Runnable run, long delay) {
+        try {
+            starter.schedule(() -> handOff(run), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("**** Task {} was stopped before starting", task.getName());
+        }
+    }
+
+    private void handOff(Runnable run) {
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            log.warn("**** Task {} could not be started: {}", task.getName(), e.toString());
+        }
+    }
+
+    private boolean run() {
+        log.debug("**** Running {} task", task.getName());
+        try {
+            runnable.run();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("**** Task {} failed", task.getName(), e);
+            return false;
+        }
+    }
+
     @Override
     public String toString() {
         return "ConsumingTask{" +
@@ -0,0 +1,185 @@
+package com.ugcleague.ops.service.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size history of ping and player count samples of a single server, backed by primitive arrays. Recording a
+ * sample never allocates; once full, each new sample overwrites the oldest one.
+ */
+public class SampleRing {
+
+    private static final char[] BARS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+
+    private final long[] times;
+    private final int[] pings;
+    private final int[] players;
+    private int next = 0;
+    private int size = 0;
+
+    public SampleRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.times = new long[capacity];
+        this.pings = new int[capacity];
+        this.players = new int[capacity];
+    }
+
+    /**
+     * Store a new sample.
+     *
+     * @param time    epoch milliseconds of the sample
+     * @param ping    latency, or a negative value if the server did not respond
+     * @param players player count, or a negative value if the server did not respond
+     */
+    public synchronized void record(long time, int ping, int players) {
+        this.times[next] = time;
+        this.pings[next] = ping;
+        this.players[next] = players;
+        next = (next + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the latest ping sample, or -1 if there are no samples
+     */
+    public synchronized int latestPing() {
+        return size == 0 ? -1 : pings[(next - 1 + pings.length) % pings.length];
+    }
+
+    /**
+     * @return the latest player count sample, or -1 if there are no samples
+     */
+    public synchronized int latestPlayers() {
+        return size == 0 ? -1 : players[(next - 1 + players.length) % players.length];
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    /**
+     * Copy the samples taken at or after the given time, oldest first.
+     *
+     * @param since epoch milliseconds of the oldest sample to include
+     * @return a copy of the matching samples
+     */
+    public synchronized Samples since(long since) {
+        int start = (next - size + times.length) % times.length;
+        int skip = 0;
+        while (skip < size && times[(start + skip) % times.length] < since) {
+            skip++;
+        }
+        int count = size - skip;
+        Samples samples = new Samples(count);
+        for (int i = 0; i < count; i++) {
+            int index = (start + skip + i) % times.length;
+            samples.times[i] = times[index];
+            samples.pings[i] = pings[index];
+            samples.players[i] = players[index];
+        }
+        return samples;
+    }
+
+    /**
+     * A point-in-time copy of part of the history, with helpers to summarize it.
+     */
+    public static class Samples {
+
+        private final long[] times;
+        private final int[] pings;
+        private final int[] players;
+
+        private Samples(int count) {
+            this.times = new long[count];
+            this.pings = new int[count];
+            this.players = new int[count];
+        }
+
+        public int size() {
+            return times.length;
+        }
+
+        public long[] getTimes() {
+            return times;
+        }
+
+        public int[] getPings() {
+            return pings;
+        }
+
+        public int[] getPlayers() {
+            return players;
+        }
+
+        /**
+         * @return number of samples where the server did not respond
+         */
+        public int failures() {
+            int count = 0;
+            for (int ping : pings) {
+                if (ping < 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Calculate a percentile using the nearest-rank method, ignoring samples where the server did not respond.
+         *
+         * @param values     one of the sample arrays
+         * @param percentile the percentile to calculate, between 0 and 100
+         * @return the value at the given percentile, or -1 if there are no valid samples
+         */
+        public static int percentile(int[] values, double percentile) {
+            int[] valid = Arrays.stream(values).filter(v -> v >= 0).sorted().toArray();
+            if (valid.length == 0) {
+                return -1;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * valid.length);
+            return valid[Math.min(valid.length - 1, Math.max(0, rank - 1))];
+        }
+
+        /**
+         * Render the given values as a sparkline, averaging the valid samples that fall into each time slot. Slots
+         * without valid samples are rendered as a blank space.
+         *
+         * @param values one of the sample arrays
+         * @param from   epoch milliseconds where the first slot starts
+         * @param to     epoch milliseconds where the last slot ends
+         * @param width  number of slots
+         * @return the sparkline
+         */
+        public String sparkline(int[] values, long from, long to, int width) {
+            long[] sums = new long[width];
+            int[] counts = new int[width];
+            long span = Math.max(1, to - from);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] >= 0 && times[i] >= from && times[i] <= to) {
+                    int slot = (int) Math.min(width - 1, (times[i] - from) * width / span);
+                    sums[slot] += values[i];
+                    counts[slot]++;
+                }
+            }
+            int max = Arrays.stream(values).max().orElse(0);
+            StringBuilder builder = new StringBuilder(width);
+            for (int i = 0; i < width; i++) {
+                if (counts[i] == 0) {
+                    builder.append(' ');
+                } else {
+                    long average = sums[i] / counts[i];
+                    int bar = max <= 0 ? 0 : (int) (average * (BARS.length - 1) / max);
+                    builder.append(BARS[bar]);
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ugcleague.ops.service.util;
+
+import java.util.Map;
+
+/**
+ * The status of a game server obtained from a single A2S_INFO round trip, where the ping is the latency of that same
+ * request.
+ */
+public class StatusProbe {
+
+    private static final StatusProbe UNREACHABLE = new StatusProbe(-2, -2, null, null, null, 0);
+
+    private final int ping;
+    private final int players;
+    private final Integer maxPlayers;
+    private final String mapName;
+    private final String gameVersion;
+    private final int tvPort;
+
+    public StatusProbe(int ping, int players, Integer maxPlayers, String mapName, String gameVersion, int tvPort) {
+        this.ping = ping;
+        this.players = players;
+        this.maxPlayers = maxPlayers;
+        this.mapName = mapName;
+        this.gameVersion = gameVersion;
+        this.tvPort = tvPort;
+    }
+
+    /**
+     * Build a status from the A2S_INFO response. Bots, like SourceTV, are not counted as players.
+     *
+     * @param latency the round-trip time of the request
+     * @param info    the parsed A2S_INFO response
+     * @return the status of the server
+     */
+    public static StatusProbe of(int latency, Map<String, Object> info) {
+        int players = (Integer) info.getOrDefault("numberOfPlayers", 0) - (Integer) info.getOrDefault("botNumber", 0);
+        return new StatusProbe(latency, Math.max(0, players), (Integer) info.get("maxPlayers"),
+            (String) info.get("mapName"), (String) info.get("gameVersion"), (Integer) info.getOrDefault("tvPort", 0));
+    }
+
+    /**
+     * @return a status signalling the server did not respond, using -2 as ping and player count
+     */
+    public static StatusProbe unreachable() {
+        return UNREACHABLE;
+    }
+
+    public boolean isReachable() {
+        return ping >= 0;
+    }
+
+    public int getPing() {
+        return ping;
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    public Integer getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public String getMapName() {
+        return mapName;
+    }
+
+    public String getGameVersion() {
+        return gameVersion;
+    }
+
+    public int getTvPort() {
+        return tvPort;
+    }
+
+    @Override
+    public String toString() {
+        return "StatusProbe{" +
+            "ping=" + ping +
+            ", players=" + players +
+            ", maxPlayers=" + maxPlayers +
+            ", mapName='" + mapName + '\'' +
+            ", gameVersion='" + gameVersion + '\'' +
+            ", tvPort=" + tvPort +
+            '}';
+    }
+}
@@ -0,0 +1,82 @@
+package com.ugcleague.ops.service.util;
+
+import com.codahale.metrics.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads the per-item work of a sweep across a time window, so requests to many servers are not sent at once. Each
+ * item gets a deterministic start offset derived from its key, which keeps every server at the same position of the
+ * window across sweeps.
+ * <p>
+ * The planner also measures the resulting outbound request rate: every call to {@link #mark()} counts one request and
+ * the number of requests sent during each active second is recorded into a histogram.
+ */
+public class SweepPlanner {
+
+    private final long window;
+    private final Histogram requestsPerSecond;
+    private final LongSupplier clock;
+
+    private long currentSecond = -1;
+    private int currentCount = 0;
+
+    /**
+     * Create a new planner.
+     *
+     * @param window            length of the window to spread the work into, in milliseconds
+     * @param requestsPerSecond histogram that receives the number of requests sent during each second
+     */
+    public SweepPlanner(long window, Histogram requestsPerSecond) {
+        this(window, requestsPerSecond, System::currentTimeMillis);
+    }
+
+    SweepPlanner(long window, Histogram requestsPerSecond, LongSupplier clock) {
+        this.window = Math.max(0, window);
+        this.requestsPerSecond = requestsPerSecond;
+        this.clock = clock;
+    }
+
+    /**
+     * Calculate the start offset of the item with the given key.
+     *
+     * @param key a stable identifier of the item, like a server id
+     * @return the offset in milliseconds within the window, uniformly distributed over keys
+     */
+    public long offset(String key) {
+        if (window == 0 || key == null) {
+            return 0;
+        }
+        return (Integer.toUnsignedLong(mix(key.hashCode())) * window) >>> 32;
+    }
+
+    public long getWindow(TimeUnit unit) {
+        return unit.convert(window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register that one outbound request was sent.
+     */
+    public synchronized void mark() {
+        long second = clock.getAsLong() / 1000;
+        if (second != currentSecond) {
+            if (currentCount > 0 && requestsPerSecond != null) {
+                requestsPerSecond.update(currentCount);
+            }
+            currentSecond = second;
+            currentCount = 0;
+        }
+        currentCount++;
+    }
+
+    // Murmur3 finalizer, so similar ids land far apart
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ugcleague.ops.domain.document;
+
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GameServerTest {
+
+    @Test
+    public void testSettersMarkOnlyChangedFields() {
+        GameServer server = new GameServer();
+        server.setPing(40);
+        server.setPlayers(12);
+        server.clearDirtyFields();
+        assertFalse(server.isDirty());
+
+        server.setPing(40);
+        server.setPlayers(null);
+        server.setMapName("cp_badlands");
+        assertEquals(new LinkedHashSet<>(Arrays.asList("players", "mapName")), server.getDirtyFields());
+    }
+
+    @Test
+    public void testFieldChangedBackStaysDirty() {
+        GameServer server = new GameServer();
+        server.setPlayers(12);
+        server.clearDirtyFields();
+        server.setPlayers(0);
+        server.setPlayers(12);
+        // the value in the database is unknown at this point, so it's still written
+        assertTrue(server.getDirtyFields().contains("players"));
+    }
+
+    @Test
+    public void testEqualDatesAreNotDirty() {
+        ZonedDateTime date = ZonedDateTime.now();
+        GameServer server = new GameServer();
+        server.setStatusCheckDate(date);
+        server.setClaimable(false);
+        server.clearDirtyFields();
+        server.setStatusCheckDate(ZonedDateTime.from(date));
+        server.setClaimable(false);
+        assertFalse(server.isDirty());
+    }
+
+    @Test
+    public void testDirtyFieldsAreReadOnly() {
+        try {
+            new GameServer().getDirtyFields().clear();
+            fail("Dirty fields should only be cleared through the server");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
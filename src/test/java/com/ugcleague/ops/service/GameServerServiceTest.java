@@ -0,0 +1,120 @@
+package com.ugcleague.ops.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.mongodb.DBObject;
+import com.ugcleague.ops.config.LeagueProperties;
+import com.ugcleague.ops.domain.document.GameServer;
+import com.ugcleague.ops.repository.mongo.GameServerRepository;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameServerServiceTest {
+
+    private final List<Map<String, Update>> bulkUpdates = new ArrayList<>();
+    private final List<GameServer> saved = new ArrayList<>();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private GameServerService service;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        // only the calls made by saveChanges are answered
+        GameServerRepository repository = (GameServerRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{GameServerRepository.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "bulkUpdate":
+                        Map<String, Update> updates = new LinkedHashMap<>((Map<String, Update>) args[0]);
+                        bulkUpdates.add(updates);
+                        return updates.size();
+                    case "save":
+                        saved.add((GameServer) args[0]);
+                        return args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        service = new GameServerService(repository, null, null, null, metricRegistry, new LeagueProperties(), null);
+    }
+
+    @Test
+    public void testOnlyModifiedFieldsAreWrittenInOneBulk() {
+        GameServer busy = loaded("1");
+        busy.setPlayers(12);
+        busy.setPing(40);
+        GameServer idle = loaded("2");
+        idle.setPing(null); // same value as loaded
+        int written = service.saveChanges(Arrays.asList(busy, idle));
+        assertEquals(1, written);
+        assertEquals(1, bulkUpdates.size());
+        Map<String, Update> updates = bulkUpdates.get(0);
+        assertEquals(Collections.singleton("1"), updates.keySet());
+        DBObject set = (DBObject) updates.get("1").getUpdateObject().get("$set");
+        assertEquals(new HashSet<>(Arrays.asList("players", "ping")), set.keySet());
+        assertEquals(12, set.get("players"));
+        assertFalse(busy.isDirty());
+        assertEquals(1, metricRegistry.counter(MetricNames.GAME_SERVER_WRITES_SKIPPED).getCount());
+    }
+
+    @Test
+    public void testNewServersAreSavedInFull() {
+        GameServer server = new GameServer();
+        server.setAddress("127.0.0.1:27015");
+        int written = service.saveChanges(Collections.singletonList(server));
+        assertEquals(1, written);
+        assertEquals(Collections.singletonList(server), saved);
+        assertTrue(bulkUpdates.get(0).isEmpty());
+        assertFalse(server.isDirty());
+    }
+
+    @Test
+    public void testUnchangedServersAreNotWritten() {
+        int written = service.saveChanges(Arrays.asList(loaded("1"), loaded("2")));
+        assertEquals(0, written);
+        assertTrue(bulkUpdates.get(0).isEmpty());
+        assertEquals(2, metricRegistry.counter(MetricNames.GAME_SERVER_WRITES_SKIPPED).getCount());
+    }
+
+    @Test
+    public void testPingAloneIsNotAStatusChange() {
+        GameServer server = loaded("1");
+        server.setPing(40);
+        server.clearDirtyFields();
+        server.setPing(55);
+        assertFalse(GameServerService.isStatusChanged(server, 40));
+        server.setPlayers(3);
+        assertTrue(GameServerService.isStatusChanged(server, 40));
+    }
+
+    @Test
+    public void testGoingUpOrDownIsAStatusChange() {
+        GameServer server = loaded("1");
+        server.setPing(-1);
+        assertTrue(GameServerService.isStatusChanged(server, 40));
+        server.clearDirtyFields();
+        server.setPing(40);
+        assertTrue(GameServerService.isStatusChanged(server, -1));
+    }
+
+    private static GameServer loaded(String id) {
+        GameServer server = new GameServer();
+        server.setId(id);
+        server.setName("UGC 6v6 Chicago " + id);
+        server.clearDirtyFields();
+        return server;
+    }
+}
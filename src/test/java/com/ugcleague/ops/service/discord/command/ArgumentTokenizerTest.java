@@ -0,0 +1,76 @@
+package com.ugcleague.ops.service.discord.command;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArgumentTokenizerTest {
+
+    private static final Pattern PATTERN = Pattern.compile("[^ \\t\"']+|\"([^\"]*)\"|'([^']*)'");
+
+    // previous regex based implementation, kept as reference
+    private static String[] regexSplit(String args, int limit, boolean unquote, Map<String, String> optionAliases) {
+        Matcher matcher = PATTERN.matcher(args);
+        List<String> matches = new ArrayList<>();
+        int count = 1;
+        while (matcher.find()) {
+            if (limit > 0 && ++count > limit) {
+                String group = args.substring(matcher.start());
+                matches.add(group);
+                break;
+            } else {
+                String group = matcher.group();
+                matches.add(unquote ? group.replaceAll("\"|'", "") : group);
+            }
+        }
+        if (optionAliases != null && !optionAliases.isEmpty()) {
+            return matches.stream().map(s -> optionAliases.getOrDefault(s, s))
+                .collect(Collectors.toList()).toArray(new String[matches.size()]);
+        } else {
+            return matches.toArray(new String[matches.size()]);
+        }
+    }
+
+    private void assertSame(String args, int limit, boolean unquote, Map<String, String> aliases) {
+        assertEquals(Arrays.toString(regexSplit(args, limit, unquote, aliases)),
+            Arrays.toString(ArgumentTokenizer.split(args, limit, unquote, aliases)));
+    }
+
+    @Test
+    public void testQuotesAndAliases() {
+        Map<String, String> aliases = new HashMap<>();
+        aliases.put("full", "-f");
+        String[] tokens = ArgumentTokenizer.split("-f \"File name\" full 'it is' x\"y\"z", 0, true, aliases);
+        assertEquals(Arrays.asList("-f", "File name", "-f", "it is", "x", "y", "z"), Arrays.asList(tokens));
+    }
+
+    @Test
+    public void testLimitCapturesTail() {
+        String[] tokens = ArgumentTokenizer.split("add greeting  \"Hello\" there 'friend'", 2, true, null);
+        assertEquals(Arrays.asList("add", "greeting  \"Hello\" there 'friend'"), Arrays.asList(tokens));
+    }
+
+    @Test
+    public void testSameAsRegexImplementation() {
+        Map<String, String> aliases = new HashMap<>();
+        aliases.put("a", "--all");
+        aliases.put("x y", "-x");
+        assertSame(".rcon chi1 \"sv_password \\\"\" -q", 0, true, null);
+        assertSame("  it's   \"unbalanced ", 0, true, aliases);
+        assertSame("", 3, false, aliases);
+        Random random = new Random(42);
+        char[] alphabet = {'a', 'x', 'y', ' ', ' ', '\t', '"', '\'', '-', '\n'};
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(24)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertSame(new String(chars), random.nextInt(4), random.nextBoolean(), random.nextBoolean() ? aliases : null);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.ugcleague.ops.service.discord.command;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ugcleague.ops.service.discord.command.CommandMetrics.Invocation;
+import com.ugcleague.ops.service.discord.command.CommandMetrics.Outcome;
+import com.ugcleague.ops.service.discord.command.CommandMetrics.Phase;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandMetricsTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private final CommandMetrics metrics = new CommandMetrics(registry);
+    private final Command command = CommandBuilder.equalsTo(".announce start").description("Start")
+        .command((m, o) -> "").build();
+
+    @Test
+    public void testCommandKeyNames() {
+        assertEquals("announce-start", MetricNames.commandKey(".announce start"));
+        assertEquals("commands.latency.announce-start.parse",
+            MetricNames.commandLatency("announce-start", Phase.PARSE.key()));
+        assertEquals("commands.outcomes.announce-start.option-error",
+            MetricNames.commandOutcome("announce-start", Outcome.OPTION_ERROR.key()));
+    }
+
+    @Test
+    public void testInvocationRecordsPhasesAndOutcome() {
+        Invocation invocation = metrics.start(command);
+        invocation.lap(Phase.PERMISSION);
+        invocation.lap(Phase.WAIT);
+        invocation.lap(Phase.PARSE);
+        invocation.lap(Phase.EXECUTE);
+        invocation.lap(Phase.REPLY);
+        invocation.finish(Outcome.SUCCESS);
+        for (Phase phase : Phase.values()) {
+            assertEquals(1, registry.timer(MetricNames.commandLatency("announce-start", phase.key())).getCount());
+        }
+        assertEquals(1, registry.meter(MetricNames.commandOutcome("announce-start", "success")).getCount());
+        assertEquals(0, registry.meter(MetricNames.commandOutcome("announce-start", "help")).getCount());
+    }
+
+    @Test
+    public void testRemovedCommandLeavesNoMetrics() {
+        metrics.start(command).finish(Outcome.SUCCESS);
+        assertFalse(registry.getMetrics().isEmpty());
+        metrics.remove(command);
+        assertTrue(registry.getMetrics().isEmpty());
+        // registered again on the next invocation
+        metrics.start(command).finish(Outcome.SUCCESS);
+        assertEquals(1, registry.meter(MetricNames.commandOutcome("announce-start", "success")).getCount());
+    }
+
+    @Test
+    public void testOnlyFirstOutcomeIsCounted() {
+        Invocation invocation = metrics.start(command);
+        invocation.finish(Outcome.TIMEOUT);
+        invocation.finish(Outcome.FAILURE);
+        assertEquals(1, registry.meter(MetricNames.commandOutcome("announce-start", "timeout")).getCount());
+        assertEquals(0, registry.meter(MetricNames.commandOutcome("announce-start", "failure")).getCount());
+        assertEquals(1, registry.timer(MetricNames.commandLatency("announce-start", "total")).getCount());
+    }
+}
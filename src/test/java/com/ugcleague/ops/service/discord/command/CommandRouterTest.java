@@ -0,0 +1,51 @@
+package com.ugcleague.ops.service.discord.command;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CommandRouterTest {
+
+    private final CommandRouter router = new CommandRouter(Arrays.asList(
+        CommandBuilder.startsWith(".announce").build(),
+        CommandBuilder.anyMatch(".announce start").build(),
+        CommandBuilder.anyMatch(".help").build(),
+        CommandBuilder.equalsTo(".servers").build(),
+        CommandBuilder.startsWith(".server connect").build(),
+        CommandBuilder.equalsTo("good morning").build()));
+
+    private String route(String message) {
+        return router.route(message).map(Command::getKey).orElse(null);
+    }
+
+    @Test
+    public void testMatchTypes() {
+        assertEquals(".help", route(".help"));
+        assertEquals(".help", route(".help full"));
+        assertEquals(".servers", route(".servers"));
+        assertEquals(null, route(".servers chi1"));
+        assertEquals(".server connect", route(".server connect chi1"));
+        assertEquals(null, route(".server connect"));
+        assertEquals("good morning", route("good morning"));
+        assertEquals(null, route("good morning everyone"));
+    }
+
+    @Test
+    public void testLongestMatchWins() {
+        assertEquals(".announce start", route(".announce start"));
+        assertEquals(".announce start", route(".announce start updates"));
+        assertEquals(".announce", route(".announce stop updates"));
+        assertEquals(null, route(".announce"));
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertFalse(router.route("").isPresent());
+        assertFalse(router.route("hello world").isPresent());
+        assertEquals(Optional.empty(), router.route(".announcements"));
+    }
+}
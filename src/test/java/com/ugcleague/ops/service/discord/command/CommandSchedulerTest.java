@@ -0,0 +1,168 @@
+package com.ugcleague.ops.service.discord.command;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.ugcleague.ops.service.discord.command.CommandScheduler.Lane;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandSchedulerTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private final CommandScheduler scheduler = new CommandScheduler(2, 2, 1, registry);
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testInteractiveLaneIsNotBlockedByLongRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(Lane.LONG_RUNNING, "user" + i, () -> await(release));
+        }
+        CompletableFuture<String> help = scheduler.submit(Lane.INTERACTIVE, "user0", () -> "help");
+        help.get(1, TimeUnit.SECONDS);
+        assertEquals(2, scheduler.getQueueDepth(Lane.LONG_RUNNING));
+        release.countDown();
+    }
+
+    @Test
+    public void testUserConcurrencyIsCapped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Supplier<Void> task = () -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            await(release);
+            running.decrementAndGet();
+            return null;
+        };
+        CompletableFuture<Void> first = scheduler.submit(Lane.INTERACTIVE, "user", task);
+        CompletableFuture<Void> second = scheduler.submit(Lane.INTERACTIVE, "user", task);
+        CompletableFuture<String> other = scheduler.submit(Lane.INTERACTIVE, "other", () -> "other");
+        other.get(1, TimeUnit.SECONDS);
+        assertFalse(second.isDone());
+        assertEquals(1, scheduler.getQueueDepth(Lane.INTERACTIVE));
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+        assertEquals(1, peak.get());
+        assertEquals(0, scheduler.getQueueDepth(Lane.INTERACTIVE));
+    }
+
+    @Test
+    public void testFailuresCompleteExceptionally() throws Exception {
+        CompletableFuture<String> future = scheduler.submit(Lane.INTERACTIVE, "user", () -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(future.isCompletedExceptionally());
+        // the failed invocation must release its slot
+        scheduler.submit(Lane.INTERACTIVE, "user", () -> "next").get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testDeadlineInterruptsAndFreesTheSlot() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> stuck = scheduler.submit(Lane.LONG_RUNNING, "user", () -> {
+            try {
+                Thread.sleep(5000);
+                return "done";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return "interrupted";
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        try {
+            stuck.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, registry.counter(MetricNames.commandLaneTimeouts("long-running")).getCount());
+        assertEquals("next", scheduler.submit(Lane.LONG_RUNNING, "user", () -> "next").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStuckCommandsDontExhaustTheLane() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            // ignores interruption, so its thread stays busy after the deadline
+            scheduler.submit(Lane.LONG_RUNNING, "user" + i, () -> {
+                while (release.getCount() > 0) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return null;
+            }, 50, TimeUnit.MILLISECONDS);
+        }
+        assertEquals("ok", scheduler.submit(Lane.LONG_RUNNING, "user2", () -> "ok").get(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testCancelRunningAndWaiting() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = scheduler.submit(Lane.LONG_RUNNING, "user", () -> {
+            started.countDown();
+            return await(release);
+        });
+        CompletableFuture<Void> waiting = scheduler.submit(Lane.LONG_RUNNING, "user", () -> await(release));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.cancel(Lane.LONG_RUNNING, "user"));
+        assertTrue(running.isCancelled());
+        assertTrue(waiting.isCancelled());
+        assertEquals(0, scheduler.getQueueDepth(Lane.LONG_RUNNING));
+        assertEquals(2, registry.counter(MetricNames.commandLaneCancelled("long-running")).getCount());
+        assertEquals("next", scheduler.submit(Lane.LONG_RUNNING, "user", () -> "next").get(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testCancelWhileDispatching() throws Exception {
+        // cancel right after submitting, racing with the worker picking up the invocation
+        for (int i = 0; i < 2000; i++) {
+            scheduler.submit(Lane.INTERACTIVE, "user" + (i % 4), () -> null);
+            scheduler.cancel(Lane.INTERACTIVE, "user" + (i % 4));
+        }
+        for (int i = 0; i < 4; i++) {
+            boolean interrupted = scheduler.submit(Lane.INTERACTIVE, "probe" + i, () -> Thread.currentThread().isInterrupted())
+                .get(1, TimeUnit.SECONDS);
+            assertFalse(interrupted);
+        }
+        // extra threads are only kept while abandoned invocations are still running
+        Gauge<?> threads = registry.getGauges().get(MetricNames.commandLaneThreads("interactive"));
+        assertEquals(2, threads.getValue());
+    }
+
+    private static Void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
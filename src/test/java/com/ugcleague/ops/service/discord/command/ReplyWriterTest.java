@@ -0,0 +1,98 @@
+package com.ugcleague.ops.service.discord.command;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplyWriterTest {
+
+    @Test
+    public void testSplitsAtLineBreaks() {
+        List<String> sent = new ArrayList<>();
+        try (ReplyWriter writer = new ReplyWriter(20, sent::add)) {
+            writer.write("first line\nsecond line\nthird\n");
+        }
+        assertEquals(Arrays.asList("first line", "second line\nthird\n"), sent);
+    }
+
+    @Test
+    public void testLongLinesAreCut() {
+        List<String> sent = new ArrayList<>();
+        try (ReplyWriter writer = new ReplyWriter(14, sent::add)) {
+            writer.write("aaaaaaaaaabbbbbbbbbbcc");
+        }
+        assertEquals(Arrays.asList("aaaaaaaaaabbbb", "bbbbbbcc"), sent);
+    }
+
+    @Test
+    public void testCodeBlocksStayBalanced() {
+        List<String> sent = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        try (ReplyWriter writer = new ReplyWriter(40, sent::add)) {
+            writer.write("```java\n");
+            for (int i = 0; i < 20; i++) {
+                writer.write("line " + i + "\n");
+                expected.add("line " + i);
+            }
+            writer.write("```\ndone");
+            expected.add("done");
+        }
+        assertTrue(sent.size() > 2);
+        List<String> lines = new ArrayList<>();
+        for (String message : sent.subList(0, sent.size() - 1)) {
+            assertTrue(message.length() <= 40);
+            assertTrue(message.startsWith("```java\n"));
+            assertTrue(message.endsWith("\n```"));
+            assertEquals(2, count(message, "```"));
+        }
+        for (String message : sent) {
+            for (String line : message.split("\n")) {
+                if (!line.startsWith("```")) {
+                    lines.add(line);
+                }
+            }
+        }
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    public void testMessagesAreSentBeforeClose() {
+        List<String> sent = new ArrayList<>();
+        ReplyWriter writer = new ReplyWriter(20, sent::add);
+        writer.write("one\ntwo\nthree\nfour\nfive\n");
+        assertEquals(1, sent.size());
+        writer.flush();
+        assertEquals(2, sent.size());
+        writer.close();
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testFlushInsideCodeBlock() {
+        List<String> sent = new ArrayList<>();
+        try (ReplyWriter writer = new ReplyWriter(40, sent::add)) {
+            writer.write("```java\nline 1\n");
+            writer.flush();
+            assertEquals(Collections.singletonList("```java\nline 1\n\n```"), sent);
+            // the reopened code block alone is not sent
+            writer.flush();
+            assertEquals(1, sent.size());
+            writer.write("line 2\n```\ndone");
+        }
+        assertEquals(Arrays.asList("```java\nline 1\n\n```", "```java\nline 2\n```\ndone"), sent);
+    }
+
+    private static int count(String str, String sub) {
+        int count = 0;
+        for (int i = str.indexOf(sub); i >= 0; i = str.indexOf(sub, i + sub.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -5,6 +5,9 @@ import org.junit.Test;
 
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class SplitMessageTest {
 
     @Test
@@ -14,7 +17,36 @@ public class SplitMessageTest {
         for (int i = 0; i < 8; i++) {
             builder.insert(i * 10, "-\n-");
         }
-        SplitMessage message = new SplitMessage(builder.toString());
+        String original = builder.toString();
+        SplitMessage message = new SplitMessage(original);
         List<String> splits = message.split(33);
+        // splits are cut at line breaks, which are dropped, or at the limit when a line is too long
+        int position = 0;
+        for (String split : splits) {
+            assertTrue(split.length() > 0 && split.length() <= 33);
+            assertEquals(original.substring(position, position + split.length()), split);
+            position += split.length();
+            if (position < original.length() && original.charAt(position) == '\n') {
+                position++;
+            }
+        }
+        assertEquals(original.length(), position);
+        // without code blocks the whole limit is used
+        assertTrue(splits.stream().anyMatch(split -> split.length() == 33));
+    }
+
+    @Test
+    public void testCodeBlockSplitsFitLimit() {
+        String code = RandomStringUtils.randomAlphanumeric(100);
+        List<String> splits = new SplitMessage("```\n" + code + "\n```").split(33);
+        StringBuilder content = new StringBuilder();
+        for (String split : splits) {
+            // every split is a whole code block, with room kept for its closing fence
+            assertEquals(33, split.length());
+            assertTrue(split.startsWith("```\n"));
+            assertTrue(split.endsWith("\n```"));
+            content.append(split, 4, split.length() - 4);
+        }
+        assertEquals(code, content.toString());
     }
 }
@@ -0,0 +1,48 @@
+package com.ugcleague.ops.service.discord.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeletionPlanTest {
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testBatchesAreLimitedInSize() {
+        DeletionPlan<Integer> plan = DeletionPlan.of(range(0, 250), i -> true, 100);
+        assertEquals(Arrays.asList(range(0, 100), range(100, 200), range(200, 250)), plan.getBatches());
+        assertTrue(plan.getSingles().isEmpty());
+    }
+
+    @Test
+    public void testExactMultipleHasNoEmptyBatch() {
+        DeletionPlan<Integer> plan = DeletionPlan.of(range(0, 200), i -> true, 100);
+        assertEquals(2, plan.getBatches().size());
+        assertTrue(plan.getSingles().isEmpty());
+    }
+
+    @Test
+    public void testLoneMessageIsDeletedSingly() {
+        DeletionPlan<Integer> plan = DeletionPlan.of(range(0, 101), i -> true, 100);
+        assertEquals(Collections.singletonList(range(0, 100)), plan.getBatches());
+        assertEquals(Collections.singletonList(100), plan.getSingles());
+    }
+
+    @Test
+    public void testIneligibleMessagesAreDeletedSingly() {
+        // odd numbers stand for messages older than 14 days
+        DeletionPlan<Integer> plan = DeletionPlan.of(range(0, 6), i -> i % 2 == 0, 100);
+        assertEquals(Collections.singletonList(Arrays.asList(0, 2, 4)), plan.getBatches());
+        assertEquals(Arrays.asList(1, 3, 5), plan.getSingles());
+    }
+}
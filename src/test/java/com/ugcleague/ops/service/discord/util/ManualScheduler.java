@@ -0,0 +1,163 @@
+package com.ugcleague.ops.service.discord.util;
+
+import com.google.common.base.Ticker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+
+/**
+ * Scheduled executor whose time only moves when a test advances it. Tasks run in the advancing thread, in order of
+ * their due time, so everything scheduled through it is deterministic.
+ */
+class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final PriorityQueue<Job> jobs = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+    private boolean shutdown = false;
+
+    Ticker ticker() {
+        return new Ticker() {
+            @Override
+            public long read() {
+                return now;
+            }
+        };
+    }
+
+    /**
+     * Move the time forward, running every task that is due on the way, including the ones they schedule.
+     *
+     * @param duration the time to move forward
+     * @param unit     the unit of the duration
+     */
+    void advance(long duration, TimeUnit unit) {
+        long target = now + unit.toNanos(duration);
+        while (!jobs.isEmpty() && jobs.peek().time <= target) {
+            Job job = jobs.poll();
+            now = Math.max(now, job.time);
+            if (!job.cancelled) {
+                job.task.run();
+            }
+        }
+        now = target;
+    }
+
+    /**
+     * Run the tasks that are due without moving the time.
+     */
+    void runPending() {
+        advance(0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Scheduler was shut down");
+        }
+        Job job = new Job(command, now + Math.max(0, unit.toNanos(delay)), sequence++);
+        jobs.add(job);
+        return job;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>();
+        jobs.forEach(job -> pending.add(job.task));
+        jobs.clear();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return shutdown;
+    }
+
+    private class Job implements ScheduledFuture<Object> {
+        private final Runnable task;
+        private final long time;
+        private final long sequence;
+        private boolean cancelled = false;
+
+        private Job(Runnable task, long time, long sequence) {
+            this.task = task;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            Job other = (Job) o;
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            return jobs.remove(this);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || !jobs.contains(this);
+        }
+
+        @Override
+        public Object get() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ugcleague.ops.service.discord.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageCoalescerTest {
+
+    private final ManualScheduler clock = new ManualScheduler();
+    private final MessageCoalescer coalescer = new MessageCoalescer(50, 20, clock);
+
+    @After
+    public void shutdown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testEditsCollapseToLatest() throws Exception {
+        List<String> sent = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            coalescer.replace("edit.1", "Progress " + i, sent::add);
+            clock.advance(5, TimeUnit.MILLISECONDS);
+        }
+        // the window started with the first edit
+        clock.advance(24, TimeUnit.MILLISECONDS);
+        assertTrue(sent.isEmpty());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singletonList("Progress 5"), sent);
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testAppendedContentIsMergedPerKey() throws Exception {
+        List<String> sent = new ArrayList<>();
+        coalescer.append("channel.1", "one", sent::add);
+        coalescer.append("channel.1", "two", sent::add);
+        coalescer.append("channel.2", "three", sent::add);
+        coalescer.flush();
+        assertEquals(Arrays.asList("one\ntwo", "three"), sent);
+    }
+
+    @Test
+    public void testDiscardedContentIsNotSent() throws Exception {
+        List<String> sent = new ArrayList<>();
+        coalescer.replace("edit.1", "Please wait...", sent::add);
+        assertTrue(coalescer.discard("edit.1"));
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testPackRespectsLengthLimit() {
+        assertEquals(Arrays.asList("aaaaa\nbbbbb", "cccccccccc"),
+            MessageCoalescer.pack(Arrays.asList("aaaaa", "bbbbb", "cccccccccc"), 12));
+        assertEquals(Arrays.asList("short", "this line is longer than the limit", "tail"),
+            MessageCoalescer.pack(Arrays.asList("short", "this line is longer than the limit", "tail"), 12));
+        assertEquals(Collections.singletonList(""), MessageCoalescer.pack(Collections.singletonList(""), 12));
+    }
+}
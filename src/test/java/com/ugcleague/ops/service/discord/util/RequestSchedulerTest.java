@@ -0,0 +1,178 @@
+package com.ugcleague.ops.service.discord.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ugcleague.ops.service.util.MetricNames;
+import org.junit.Test;
+import sx.blah.discord.util.RateLimitException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestSchedulerTest {
+
+    // requests are sent by the same manual scheduler, so time only moves when a test advances it
+    private final ManualScheduler clock = new ManualScheduler();
+    private final MetricRegistry registry = new MetricRegistry();
+    private final RequestScheduler scheduler = new RequestScheduler(clock, registry, 1000, clock, clock.ticker());
+
+    @Test
+    public void testRequestsOfBucketAreSentInOrder() throws Exception {
+        List<Integer> sent = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int n = i;
+            futures.add(scheduler.submit("channel.1", 1000, () -> {
+                sent.add(n);
+                return n;
+            }));
+        }
+        clock.advance(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) futures.get(i).getNow(null));
+            assertEquals(i, (int) sent.get(i));
+        }
+        assertEquals(0, scheduler.getQueueDepth("channel"));
+        assertEquals(20, registry.timer(MetricNames.discordRequestWait("channel")).getCount());
+    }
+
+    @Test
+    public void testRateLimitedRequestIsRetriedFirst() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> sent = new ArrayList<>();
+        CompletableFuture<String> first = scheduler.submit("channel.1", 1000, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RateLimitException("Too many requests", 50, "messages", false);
+            }
+            sent.add("first");
+            return "first";
+        });
+        CompletableFuture<String> second = scheduler.submit("channel.1", 1000, () -> {
+            sent.add("second");
+            return "second";
+        });
+        clock.advance(49, TimeUnit.MILLISECONDS);
+        assertEquals(1, attempts.get());
+        assertTrue(sent.isEmpty());
+        clock.advance(2, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("first", "second"), sent);
+        assertEquals("first", first.getNow(null));
+        assertEquals("second", second.getNow(null));
+    }
+
+    @Test
+    public void testRateLimitDoesNotBlockOtherBuckets() throws Exception {
+        CompletableFuture<String> limited = scheduler.submit("channel.1", 1000, () -> {
+            throw new RateLimitException("Too many requests", 60000, "messages", false);
+        });
+        CompletableFuture<String> other = scheduler.submit("channel.2", 1000, () -> "other");
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        assertEquals("other", other.getNow(null));
+        assertEquals(1, scheduler.getQueueDepth("channel"));
+        assertFalse(limited.isDone());
+    }
+
+    @Test
+    public void testGlobalRateLimitBlocksEveryBucket() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> limited = scheduler.submit("channel.1", 1000, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RateLimitException("Too many requests", 100, "global", true);
+            }
+            return "limited";
+        });
+        clock.runPending();
+        assertEquals(1, attempts.get());
+        CompletableFuture<String> other = scheduler.submit("channel.2", 1000, () -> "other");
+        clock.advance(99, TimeUnit.MILLISECONDS);
+        assertFalse(other.isDone());
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        assertEquals("other", other.getNow(null));
+        assertEquals("limited", limited.getNow(null));
+    }
+
+    @Test
+    public void testBucketRateSpacesRequests() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(scheduler.submit("delete", 50, () -> "deleted"));
+        }
+        // four intervals of 20 ms between the five requests
+        clock.advance(79, TimeUnit.MILLISECONDS);
+        assertEquals(4, futures.stream().filter(CompletableFuture::isDone).count());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    public void testGroupRateIsSharedByItsBuckets() throws Exception {
+        scheduler.limitGroup("private", 20);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(scheduler.submit("private", "private." + i, 1000, () -> "sent"));
+        }
+        // three intervals of 50 ms between the four requests, even if each one has its own bucket
+        clock.advance(149, TimeUnit.MILLISECONDS);
+        assertEquals(3, futures.stream().filter(CompletableFuture::isDone).count());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    public void testIdleBucketsAreDropped() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(scheduler.submit("private." + i, 20, () -> "sent"));
+        }
+        // the global rate sends one request per millisecond
+        clock.advance(60, TimeUnit.MILLISECONDS);
+        assertTrue(futures.stream().allMatch(CompletableFuture::isDone));
+        // buckets are kept until their own rate allows another request
+        assertTrue(scheduler.getBucketCount() > 0);
+        clock.advance(40, TimeUnit.MILLISECONDS);
+        assertEquals(0, scheduler.getBucketCount());
+        // metrics are shared by every bucket of the same kind
+        assertEquals(50, registry.timer(MetricNames.discordRequestWait("private")).getCount());
+        assertFalse(registry.getMetrics().containsKey(MetricNames.discordRequestWait("private.1")));
+    }
+
+    @Test
+    public void testDroppedBucketKeepsItsRate() throws Exception {
+        CompletableFuture<String> first = scheduler.submit("delete", 10, () -> "deleted");
+        clock.runPending();
+        assertTrue(first.isDone());
+        clock.advance(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<String> second = scheduler.submit("delete", 10, () -> "deleted");
+        // the second request waits for the 100 ms interval even though the bucket was idle in between
+        clock.advance(49, TimeUnit.MILLISECONDS);
+        assertFalse(second.isDone());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    public void testFailuresCompleteExceptionally() throws Exception {
+        CompletableFuture<String> failed = scheduler.submit("channel.1", 1000, () -> {
+            throw new IllegalStateException("Missing permissions");
+        });
+        clock.runPending();
+        try {
+            failed.get();
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        CompletableFuture<String> next = scheduler.submit("channel.1", 1000, () -> "next");
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals("next", next.getNow(null));
+    }
+}
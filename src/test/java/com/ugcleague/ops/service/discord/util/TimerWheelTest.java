@@ -0,0 +1,60 @@
+package com.ugcleague.ops.service.discord.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private final List<List<String>> expirations = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> expiredAt = new ConcurrentHashMap<>();
+    private final CountDownLatch latch = new CountDownLatch(3);
+    // a small wheel, so the longer delays need more than one round
+    private final TimerWheel<String> wheel = new TimerWheel<>(10, TimeUnit.MILLISECONDS, 4, "test-wheel", items -> {
+        expirations.add(new ArrayList<>(items));
+        items.forEach(i -> {
+            expiredAt.put(i, System.nanoTime());
+            latch.countDown();
+        });
+    });
+
+    @After
+    public void shutdown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    public void testItemsExpireAfterTheirDelay() throws Exception {
+        long start = System.nanoTime();
+        wheel.schedule("late", 120, TimeUnit.MILLISECONDS);
+        wheel.schedule("soon", 20, TimeUnit.MILLISECONDS);
+        wheel.schedule("middle", 70, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(expiredAt.get("soon") - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(expiredAt.get("middle") - start >= TimeUnit.MILLISECONDS.toNanos(70));
+        assertTrue(expiredAt.get("late") - start >= TimeUnit.MILLISECONDS.toNanos(120));
+        assertTrue(expiredAt.get("soon") < expiredAt.get("middle"));
+        assertTrue(expiredAt.get("middle") < expiredAt.get("late"));
+    }
+
+    @Test
+    public void testItemsDueTogetherExpireTogether() throws Exception {
+        wheel.schedule("a", 0, TimeUnit.MILLISECONDS);
+        wheel.schedule("b", 0, TimeUnit.MILLISECONDS);
+        wheel.schedule("c", 0, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(1, expirations.size());
+        assertEquals(Arrays.asList("a", "b", "c"), expirations.get(0));
+    }
+}
@@ -0,0 +1,272 @@
+package com.ugcleague.ops.service.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class A2SClientTest {
+
+    private static final int CHALLENGE = 0x12345678;
+
+    private DatagramSocket server;
+    private Thread serverThread;
+    private A2SClient client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        serverThread = new Thread(this::serve, "a2s-stand-in");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        client = new A2SClient(500, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void teardown() {
+        client.close();
+        server.close();
+    }
+
+    private InetSocketAddress address() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    }
+
+    @Test
+    public void testInfoWithChallenge() throws Exception {
+        Map<String, Object> info = client.info(address()).get(2, TimeUnit.SECONDS);
+        assertEquals("cp_badlands", info.get("mapName"));
+        assertEquals(24, info.get("maxPlayers"));
+        assertEquals(12, info.get("numberOfPlayers"));
+        assertEquals("3551456", info.get("gameVersion"));
+        assertEquals(27020, info.get("tvPort"));
+    }
+
+    @Test
+    public void testSplitPlayerResponse() throws Exception {
+        List<A2SClient.Player> players = client.players(address()).get(2, TimeUnit.SECONDS);
+        assertEquals(12, players.size());
+        assertEquals("player11", players.get(11).getName());
+        assertEquals(11, players.get(11).getScore());
+    }
+
+    @Test
+    public void testRules() throws Exception {
+        Map<String, String> rules = client.rules(address()).get(2, TimeUnit.SECONDS);
+        assertEquals("1", rules.get("mp_tournament"));
+    }
+
+    @Test
+    public void testManyQueuedQueriesToSameServer() throws Exception {
+        List<Integer> pings = Arrays.asList(client.ping(address()).get(2, TimeUnit.SECONDS),
+            client.ping(address()).get(2, TimeUnit.SECONDS), client.ping(address()).get(2, TimeUnit.SECONDS));
+        assertTrue(pings.stream().allMatch(p -> p >= 0));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        try (DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            client.info(new InetSocketAddress(InetAddress.getLoopbackAddress(), silent.getLocalPort()))
+                .get(2, TimeUnit.SECONDS);
+            fail("Query to a silent server should time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testLateResponseIsNotCreditedToNextQuery() throws Exception {
+        try (DatagramSocket slow = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            Thread slowThread = new Thread(() -> serveLate(slow), "a2s-slow-stand-in");
+            slowThread.setDaemon(true);
+            slowThread.start();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), slow.getLocalPort());
+            CompletableFuture<Map<String, Object>> expired = client.info(address);
+            CompletableFuture<Map<String, Object>> next = client.info(address);
+            try {
+                expired.get(2, TimeUnit.SECONDS);
+                fail("First query should time out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertEquals("cp_badlands", next.get(3, TimeUnit.SECONDS).get("mapName"));
+        }
+    }
+
+    private void serveLate(DatagramSocket socket) {
+        // answers the first request after the client timeout, the others right away
+        byte[] buffer = new byte[1400];
+        boolean first = true;
+        while (!socket.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                byte[] response = info(first ? "cp_stale" : "cp_badlands");
+                if (first) {
+                    Thread.sleep(700);
+                    first = false;
+                }
+                socket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+            } catch (IOException | InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // A2S stand-in server
+    ///////////////////////////////
+
+    private void serve() {
+        byte[] buffer = new byte[1400];
+        while (!server.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                server.receive(packet);
+                ByteBuffer request = ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).order(ByteOrder.LITTLE_ENDIAN);
+                request.getInt();
+                byte type = request.get();
+                for (byte[] response : respond(type, request)) {
+                    server.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+                }
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private List<byte[]> respond(byte type, ByteBuffer request) {
+        if (type == 0x54) {
+            request.position(request.position() + 20);
+            if (request.remaining() < 4 || request.getInt() != CHALLENGE) {
+                return Arrays.asList(challenge());
+            }
+            return Arrays.asList(info());
+        } else if (type == 0x55) {
+            if (request.getInt() != CHALLENGE) {
+                return Arrays.asList(challenge());
+            }
+            return split(players(), 64);
+        } else if (type == 0x56) {
+            if (request.getInt() != CHALLENGE) {
+                return Arrays.asList(challenge());
+            }
+            return Arrays.asList(rules());
+        }
+        return Arrays.asList();
+    }
+
+    private byte[] challenge() {
+        return ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN).putInt(-1).put((byte) 0x41).putInt(CHALLENGE).array();
+    }
+
+    private byte[] info() {
+        return info("cp_badlands");
+    }
+
+    private byte[] info(String mapName) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0x49);
+        out.write(17);
+        string(out, "UGC 6v6 Chicago 1");
+        string(out, mapName);
+        string(out, "tf");
+        string(out, "Team Fortress");
+        out.write(440 & 0xFF);
+        out.write(440 >> 8);
+        out.write(12);
+        out.write(24);
+        out.write(0);
+        out.write('d');
+        out.write('l');
+        out.write(1);
+        out.write(1);
+        string(out, "3551456");
+        out.write(0x40);
+        out.write(27020 & 0xFF);
+        out.write(27020 >> 8);
+        string(out, "SourceTV");
+        return out.toByteArray();
+    }
+
+    private byte[] players() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0x44);
+        out.write(12);
+        for (int i = 0; i < 12; i++) {
+            out.write(i);
+            string(out, "player" + i);
+            byte[] tail = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(i).putFloat(60f * i).array();
+            out.write(tail, 0, tail.length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] rules() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0xFF);
+        out.write(0x45);
+        out.write(2);
+        out.write(0);
+        string(out, "mp_tournament");
+        string(out, "1");
+        string(out, "sv_cheats");
+        string(out, "0");
+        return out.toByteArray();
+    }
+
+    private List<byte[]> split(byte[] payload, int size) {
+        int total = (payload.length + size - 1) / size;
+        byte[][] packets = new byte[total][];
+        for (int i = 0; i < total; i++) {
+            int length = Math.min(size, payload.length - i * size);
+            packets[i] = ByteBuffer.allocate(12 + length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(-2).putInt(77).put((byte) total).put((byte) i).putShort((short) 1248)
+                .put(payload, i * size, length).array();
+        }
+        // deliver out of order to exercise reassembly
+        List<byte[]> list = Arrays.asList(packets);
+        Collections.reverse(list);
+        return list;
+    }
+
+    private void string(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+        out.write(0);
+    }
+}
@@ -0,0 +1,27 @@
+package com.ugcleague.ops.service.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingQueueTest {
+
+    private final CoalescingQueue<String, Integer> queue = new CoalescingQueue<>(Integer::sum);
+
+    @Test
+    public void testMergesByKeyAndDrainsInBatches() {
+        queue.offer("a", 1);
+        queue.offer("b", 2);
+        queue.offer("a", 3);
+        queue.offer("c", 4);
+        assertEquals(3, queue.size());
+        assertEquals(Arrays.asList(4, 2), queue.drain(2));
+        assertEquals(Collections.singletonList(4), queue.drain(2));
+        assertTrue(queue.isEmpty());
+        assertEquals(Collections.emptyList(), queue.drain(2));
+    }
+}
@@ -0,0 +1,117 @@
+package com.ugcleague.ops.service.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FanOutExecutorTest {
+
+    private final FanOutExecutor executor = new FanOutExecutor("fan-out-test", 2);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testResultsKeepInputOrder() {
+        Map<Integer, Integer> results = executor.invokeAll(Arrays.asList(3, 1, 2), i -> i * 10,
+            1, 5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(3, 1, 2), Arrays.asList(results.keySet().toArray(new Integer[0])));
+        assertEquals(Integer.valueOf(30), results.get(3));
+    }
+
+    @Test
+    public void testFailedAndNullResultsAreLeftOut() {
+        Map<Integer, Integer> results = executor.invokeAll(Arrays.asList(1, 2, 3), i -> {
+            if (i == 2) {
+                throw new IllegalStateException("broken");
+            }
+            return i == 3 ? null : i;
+        }, 1, 5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonMap(1, 1), results);
+    }
+
+    @Test
+    public void testSlowItemIsCancelledAtItsDeadline() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        long start = System.nanoTime();
+        Map<Integer, Integer> results = executor.invokeAll(Arrays.asList(1, 2), i -> {
+            if (i == 1) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+            return i;
+        }, 200, 5000, TimeUnit.MILLISECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonMap(2, 2), results);
+    }
+
+    @Test
+    public void testItemDeadlineStartsWhenWorkStarts() {
+        // with one thread, the second item waits for the first one without eating into its own deadline
+        FanOutExecutor single = new FanOutExecutor("fan-out-single", 1);
+        try {
+            Map<Integer, Integer> results = single.invokeAll(Arrays.asList(1, 2), i -> {
+                sleep(150);
+                return i;
+            }, 250, 2000, TimeUnit.MILLISECONDS);
+            assertEquals(2, results.size());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testStragglersAreCancelledAtBatchDeadline() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch interrupted = new CountDownLatch(2);
+        long start = System.nanoTime();
+        Map<Integer, Integer> results = executor.invokeAll(Arrays.asList(1, 2, 3, 4), i -> {
+            started.incrementAndGet();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return i;
+        }, 5000, 300, TimeUnit.MILLISECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertTrue(results.isEmpty());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        // queued items were cancelled before they could start
+        sleep(200);
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void testStartDelays() {
+        long start = System.nanoTime();
+        Map<Integer, Long> results = executor.invokeAll(Arrays.asList(0, 300),
+            i -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), i -> (long) i,
+            1000, 2000, TimeUnit.MILLISECONDS);
+        assertTrue(results.get(0) < 300);
+        assertTrue(results.get(300) >= 300);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
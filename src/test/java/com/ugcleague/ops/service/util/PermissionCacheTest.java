@@ -0,0 +1,58 @@
+package com.ugcleague.ops.service.util;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionCacheTest {
+
+    private long nanos = 0;
+    private final PermissionCache cache = new PermissionCache(3, 60_000, new Ticker() {
+        @Override
+        public long read() {
+            return nanos;
+        }
+    });
+
+    @Test
+    public void testExpiresAfterTimeToLive() {
+        cache.put("command.user", "u1", "c1", "g1", true);
+        nanos = TimeUnit.SECONDS.toNanos(59);
+        assertEquals(true, cache.get("command.user", "u1", "c1"));
+        nanos = TimeUnit.SECONDS.toNanos(60);
+        assertNull(cache.get("command.user", "u1", "c1"));
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        for (int i = 0; i < 10; i++) {
+            cache.put("command.user", "u" + i, "c1", "g1", false);
+        }
+        assertEquals(3, cache.size());
+        assertTrue(cache.stats().evictionCount() >= 7);
+    }
+
+    @Test
+    public void testTargetedInvalidation() {
+        cache.put("command.user", "u1", "c1", "g1", true);
+        cache.put("command.user", "u2", "c2", "g2", true);
+        cache.put("command.user", "u1", "p1", null, true);
+        cache.invalidateUser("u1", "g2");
+        // the private channel decision depends on every guild
+        assertNull(cache.get("command.user", "u1", "p1"));
+        assertEquals(true, cache.get("command.user", "u1", "c1"));
+        cache.invalidateChannel("c1");
+        assertNull(cache.get("command.user", "u1", "c1"));
+        assertEquals(true, cache.get("command.user", "u2", "c2"));
+        cache.invalidateGuild("g2");
+        assertNull(cache.get("command.user", "u2", "c2"));
+        assertEquals(0, cache.size());
+    }
+}
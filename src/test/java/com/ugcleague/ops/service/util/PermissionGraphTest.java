@@ -0,0 +1,64 @@
+package com.ugcleague.ops.service.util;
+
+import com.ugcleague.ops.domain.document.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionGraphTest {
+
+    private final PermissionGraph graph = new PermissionGraph();
+    private final Permission user = new Permission("command.user", true);
+    private final Permission support = new Permission("command.support");
+
+    @Before
+    public void setup() {
+        graph.update(user);
+        graph.update(support);
+    }
+
+    @Test
+    public void testDefaultAllowAndUndefined() {
+        assertTrue(graph.canPerform("command.user", "u1", "g1", Collections.emptyList(), "c1"));
+        assertFalse(graph.canPerform("command.support", "u1", "g1", Collections.emptyList(), "c1"));
+        assertFalse(graph.canPerform("command.master", "u1", "g1", Collections.emptyList(), "c1"));
+    }
+
+    @Test
+    public void testRoleAllowsAndChannelDenies() {
+        DiscordGuild guild = new DiscordGuild("g1");
+        DiscordRole role = new DiscordRole("r1");
+        role.getAllowed().add(support);
+        guild.getRoles().add(role);
+        assertTrue(graph.update(guild));
+        assertTrue(graph.hasRole("r1"));
+        assertTrue(graph.canPerform("command.support", "u1", "g1", Arrays.asList("r0", "r1"), "c1"));
+        assertFalse(graph.canPerform("command.support", "u1", "g1", Collections.singletonList("r0"), "c1"));
+
+        DiscordChannel channel = new DiscordChannel("c1");
+        channel.getDenied().add(support);
+        channel.getDenied().add(user);
+        graph.update(channel);
+        assertFalse(graph.canPerform("command.support", "u1", "g1", Arrays.asList("r0", "r1"), "c1"));
+        assertFalse(graph.canPerform("command.user", "u1", "g1", Collections.emptyList(), "c1"));
+        assertTrue(graph.canPerform("command.user", "u1", "g1", Collections.emptyList(), "c2"));
+    }
+
+    @Test
+    public void testUpdateReportsChanges() {
+        DiscordUser discordUser = new DiscordUser("u1");
+        assertTrue(graph.update(discordUser));
+        assertFalse(graph.hasNamedUser("u1"));
+        discordUser.setName("someone");
+        assertFalse(graph.update(discordUser));
+        assertTrue(graph.hasNamedUser("u1"));
+        discordUser.getAllowed().add(support);
+        assertTrue(graph.update(discordUser));
+        assertTrue(graph.canPerform("command.support", "u1", "g1", Collections.emptyList(), "c1"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.ugcleague.ops.service.util;
+
+import com.ugcleague.ops.domain.document.GameServer;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollScheduleTest {
+
+    private static final long BUSY = 60_000;
+    private static final long IDLE = 300_000;
+    private static final long UNCLAIMED = 1_800_000;
+    private static final long DEAD_MAX = 600_000;
+
+    private final PollSchedule schedule = new PollSchedule(BUSY, IDLE, UNCLAIMED, DEAD_MAX);
+    private final Instant now = Instant.parse("2016-07-01T12:00:00Z");
+
+    private GameServer server(int ping, int players, long expiresInSeconds) {
+        GameServer server = new GameServer();
+        server.setId("s" + ping + players + expiresInSeconds);
+        server.setPing(ping);
+        server.setPlayers(players);
+        server.setExpireDate(ZonedDateTime.ofInstant(now.plusSeconds(expiresInSeconds), ZoneId.systemDefault()));
+        return server;
+    }
+
+    @Test
+    public void testIntervalsByState() {
+        assertEquals(BUSY, schedule.interval(server(30, 12, 3600), false, 0, now));
+        assertEquals(BUSY, schedule.interval(server(30, 0, 3600), true, 0, now));
+        assertEquals(IDLE, schedule.interval(server(30, 0, 3600), false, 0, now));
+        assertEquals(UNCLAIMED, schedule.interval(server(30, 0, -3600), false, 0, now));
+    }
+
+    @Test
+    public void testDeadServerBacksOff() {
+        GameServer dead = server(-2, -2, 3600);
+        assertEquals(now.plusMillis(BUSY), schedule.record(dead, false, now));
+        assertEquals(now.plusMillis(BUSY * 2), schedule.record(dead, false, now));
+        assertEquals(now.plusMillis(BUSY * 4), schedule.record(dead, false, now));
+        assertEquals(now.plusMillis(BUSY * 8), schedule.record(dead, false, now));
+        assertEquals(now.plusMillis(DEAD_MAX), schedule.record(dead, false, now));
+        dead.setPing(40);
+        dead.setPlayers(0);
+        assertEquals(now.plusMillis(IDLE), schedule.record(dead, false, now));
+    }
+
+    @Test
+    public void testDueServers() {
+        GameServer server = server(30, 0, 3600);
+        assertTrue(schedule.isDue(server, now));
+        schedule.record(server, false, now);
+        assertFalse(schedule.isDue(server, now.plusMillis(IDLE - 1)));
+        assertTrue(schedule.isDue(server, now.plusMillis(IDLE)));
+    }
+
+    @Test
+    public void testLastPoll() {
+        GameServer server = server(30, 0, 3600);
+        assertFalse(schedule.getLastPoll(server).isPresent());
+        schedule.record(server, false, now);
+        schedule.record(server, false, now.plusMillis(IDLE));
+        assertEquals(now.plusMillis(IDLE), schedule.getLastPoll(server).get());
+    }
+}
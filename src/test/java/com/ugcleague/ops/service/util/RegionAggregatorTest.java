@@ -0,0 +1,47 @@
+package com.ugcleague.ops.service.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegionAggregatorTest {
+
+    @Test
+    public void testLatestSampleReplacesPrevious() {
+        RegionAggregator aggregator = new RegionAggregator();
+        aggregator.update("1", "chi", 40, 12);
+        aggregator.update("2", "chi", 60, 6);
+        aggregator.update("3", "dal", 80, 0);
+        assertEquals(50.0, aggregator.getAveragePing("chi"), 0.001);
+        assertEquals(18L, aggregator.getPlayerCount("chi"));
+        aggregator.update("1", "chi", 20, 2);
+        assertEquals(40.0, aggregator.getAveragePing("chi"), 0.001);
+        assertEquals(8L, aggregator.getPlayerCount("chi"));
+        assertEquals(8L, aggregator.getPlayerCount());
+        assertEquals(8 / 3.0, aggregator.getAveragePlayers(), 0.001);
+    }
+
+    @Test
+    public void testUnresponsiveServersDoNotContribute() {
+        RegionAggregator aggregator = new RegionAggregator();
+        aggregator.update("1", "chi", 40, 12);
+        aggregator.update("2", "chi", -2, -2);
+        assertEquals(40.0, aggregator.getAveragePing("chi"), 0.001);
+        assertEquals(12.0, aggregator.getAveragePlayers("chi"), 0.001);
+        aggregator.update("1", "chi", -2, -2);
+        assertEquals(0.0, aggregator.getAveragePing("chi"), 0.001);
+        assertEquals(0L, aggregator.getPlayerCount("chi"));
+    }
+
+    @Test
+    public void testRegionsWeighTheSameInTheirAverage() {
+        RegionAggregator aggregator = new RegionAggregator();
+        aggregator.update("1", "chi", 40, 12);
+        aggregator.update("2", "chi", 60, 6);
+        aggregator.update("3", "dal", 80, 0);
+        aggregator.ensureRegion("mia");
+        // (9 + 0 + 0) / 3 regions, while the average over servers is 18 / 3
+        assertEquals(3.0, aggregator.getAverageOfRegionPlayers(), 0.001);
+        assertEquals(6.0, aggregator.getAveragePlayers(), 0.001);
+    }
+}
@@ -0,0 +1,49 @@
+package com.ugcleague.ops.service.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleRingTest {
+
+    @Test
+    public void testOverwritesOldestSamples() {
+        SampleRing ring = new SampleRing(3);
+        for (int i = 1; i <= 5; i++) {
+            ring.record(i * 1000, i * 10, i);
+        }
+        SampleRing.Samples samples = ring.since(0);
+        assertEquals(3, samples.size());
+        assertEquals(3000L, samples.getTimes()[0]);
+        assertEquals(50, samples.getPings()[2]);
+    }
+
+    @Test
+    public void testSinceFiltersOlderSamples() {
+        SampleRing ring = new SampleRing(10);
+        for (int i = 1; i <= 5; i++) {
+            ring.record(i * 1000, i * 10, i);
+        }
+        SampleRing.Samples samples = ring.since(4000);
+        assertEquals(2, samples.size());
+        assertEquals(4, samples.getPlayers()[0]);
+    }
+
+    @Test
+    public void testPercentilesIgnoreFailures() {
+        int[] pings = {-2, 10, 20, 30, 40, -2, 50, 60, 70, 80, 90, 100};
+        assertEquals(50, SampleRing.Samples.percentile(pings, 50));
+        assertEquals(100, SampleRing.Samples.percentile(pings, 99));
+        assertEquals(-1, SampleRing.Samples.percentile(new int[]{-2, -2}, 50));
+    }
+
+    @Test
+    public void testSparkline() {
+        SampleRing ring = new SampleRing(10);
+        ring.record(0, 0, 0);
+        ring.record(1000, -2, -2);
+        ring.record(3000, 80, 24);
+        SampleRing.Samples samples = ring.since(0);
+        assertEquals("▁  █", samples.sparkline(samples.getPlayers(), 0, 3999, 4));
+    }
+}
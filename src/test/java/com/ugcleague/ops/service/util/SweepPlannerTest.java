@@ -0,0 +1,35 @@
+package com.ugcleague.ops.service.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SweepPlannerTest {
+
+    private static final long WINDOW = 60000;
+
+    private final SweepPlanner planner = new SweepPlanner(WINDOW, null);
+
+    @Test
+    public void testOffsetIsDeterministic() {
+        assertEquals(planner.offset("26045"), planner.offset("26045"));
+        assertEquals(planner.offset("26045"), new SweepPlanner(WINDOW, null).offset("26045"));
+    }
+
+    @Test
+    public void testOffsetsSpreadAcrossWindow() {
+        int buckets = 10;
+        int[] counts = new int[buckets];
+        int servers = 1000;
+        for (int i = 0; i < servers; i++) {
+            long offset = planner.offset(String.valueOf(26000 + i));
+            assertTrue(offset >= 0 && offset < WINDOW);
+            counts[(int) (offset * buckets / WINDOW)]++;
+        }
+        for (int count : counts) {
+            // sequential ids must not cluster in a single part of the window
+            assertTrue("Uneven spread: " + count, count > servers / buckets / 2 && count < servers / buckets * 2);
+        }
+    }
+}